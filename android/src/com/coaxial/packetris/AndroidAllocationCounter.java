@@ -0,0 +1,34 @@
+package com.coaxial.packetris;
+
+import android.os.Debug;
+
+import com.coaxial.packetris.util.AllocationCounter;
+
+/**
+ * Counts allocations of the rendering thread using the allocation statistics of the Android runtime.
+ * Counting slows down the runtime, so this is only used in debug builds.
+ */
+
+@SuppressWarnings("deprecation")
+public class AndroidAllocationCounter implements AllocationCounter
+{
+    @Override
+    public void start()
+    {
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+    }
+
+    @Override
+    public long getAllocatedObjects()
+    {
+        return Debug.getThreadAllocCount();
+    }
+
+    @Override
+    public long getAllocatedBytes()
+    {
+        return Debug.getThreadAllocSize();
+    }
+}
@@ -1,5 +1,6 @@
 package com.coaxial.packetris;
 
+import android.content.ComponentCallbacks2;
 import android.os.Bundle;
 
 import com.badlogic.gdx.backends.android.AndroidApplication;
@@ -7,6 +8,8 @@ import com.badlogic.gdx.backends.android.AndroidApplicationConfiguration;
 import com.coaxial.packetris.PacketrisGame;
 
 public class AndroidLauncher extends AndroidApplication {
+	private PacketrisGame game;
+
 	@Override
 	protected void onCreate (Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
@@ -14,6 +17,25 @@ public class AndroidLauncher extends AndroidApplication {
 		config.useAccelerometer = false;
 		config.useCompass = false;
 		config.useWakelock = true;
-		initialize(new PacketrisGame(), config);
+		config.maxSimultaneousSounds = AudioDirector.MAX_VOICES;
+		//count allocations per frame in debug builds
+		game = new PacketrisGame(BuildConfig.DEBUG ? new AndroidAllocationCounter() : null);
+		//profile frames in debug builds, the profile is saved whenever the app is paused
+		game.getProfiler().setEnabled(BuildConfig.DEBUG);
+		game.getProfiler().setOverlayVisible(BuildConfig.DEBUG);
+		initialize(game, config);
+	}
+
+	@Override
+	public void onTrimMemory (int level) {
+		super.onTrimMemory(level);
+		//free cached assets on the render thread if the system is running low on memory
+		if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)
+			postRunnable(new Runnable() {
+				@Override
+				public void run () {
+					game.trimMemory();
+				}
+			});
 	}
 }
@@ -0,0 +1,52 @@
+package com.coaxial.packetris.benchmarks;
+
+import com.coaxial.packetris.GameType;
+import com.coaxial.packetris.engine.BatchEnvironment;
+import com.coaxial.packetris.util.SplitRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Benchmarks steps of a {@link BatchEnvironment} with random placements on all cores. Every operation is one
+ * decision per environment, so the decisions per second are the throughput times the size.
+ */
+
+@State(Scope.Thread)
+public class BatchEnvironmentBenchmark
+{
+    private static final int ACTION_SETS = 64; //distinct action arrays, cycled to avoid a fixed placement pattern
+
+    @Param({"64", "1024", "16384"})
+    public int size;
+
+    private BatchEnvironment environment;
+    private int[][] actions;
+    private int step = 0;
+
+    @Setup
+    public void setUp()
+    {
+        environment = new BatchEnvironment(GameType.DEFAULT, size);
+        long[] seeds = new long[size];
+        for (int i = 0; i < size; ++i)
+            seeds[i] = i;
+        environment.reset(seeds);
+        Random random = new SplitRandom(23);
+        actions = new int[ACTION_SETS][size];
+        for (int[] set : actions)
+            for (int i = 0; i < size; ++i)
+                set[i] = random.nextInt(BatchEnvironment.ACTIONS);
+    }
+
+    @Benchmark
+    public float[] step()
+    {
+        environment.step(actions[step++ % ACTION_SETS]);
+        return environment.getRewards();
+    }
+}
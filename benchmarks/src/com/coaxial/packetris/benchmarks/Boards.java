@@ -0,0 +1,66 @@
+package com.coaxial.packetris.benchmarks;
+
+import com.coaxial.packetris.elements.Grid;
+import com.coaxial.packetris.elements.Packet;
+import com.coaxial.packetris.elements.Shape;
+import com.coaxial.packetris.engine.Layout;
+
+import java.util.Random;
+
+/**
+ * Creates boards and packets for the benchmarks, always from a fixed seed so that runs are comparable.
+ */
+
+class Boards
+{
+    private static final Shape SINGLE_BLOCK = Shape.create(1L, 1, 1);
+
+    /**
+     * Creates a grid with the given fraction of its cells occupied, chosen at random.
+     *
+     * @param fill the fraction of occupied cells, between 0 and 1
+     * @param seed the seed of the random generator
+     * @return the grid
+     */
+    static Grid filled(double fill, long seed)
+    {
+        Random random = new Random(seed);
+        Grid grid = new Grid();
+        int target = (int) Math.round(fill * Grid.COLUMNS * Grid.ROWS);
+        for (int set = 0; set < target; )
+        {
+            Packet block = new Packet(SINGLE_BLOCK);
+            block.setPosX(random.nextInt(Grid.COLUMNS));
+            block.setPosY(Layout.BOTTOM_SPACE + random.nextInt(Grid.ROWS) * Packet.BLOCK_SIDE_LENGTH);
+            if (grid.fits(block))
+            {
+                grid.add(block);
+                set++;
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Creates random packets placed at random columns and random, usually unaligned heights inside the field.
+     *
+     * @param count     the amount of packets
+     * @param blockOnly true for convex packets as in the SPEED mode; false otherwise
+     * @param seed      the seed of the random generator
+     * @return the packets
+     */
+    static Packet[] probes(int count, boolean blockOnly, long seed)
+    {
+        Random random = new Random(seed);
+        Packet[] probes = new Packet[count];
+        for (int i = 0; i < count; ++i)
+        {
+            int x = 1 << (1 + random.nextInt(3));
+            Packet p = Packet.random(x, 16 / x, blockOnly, random);
+            p.setPosX(random.nextInt(Grid.COLUMNS - p.getShape().getWidth() + 1));
+            p.setPosY(Layout.BOTTOM_SPACE + random.nextInt((Grid.ROWS - p.getHeightInBlocks() + 1) * Packet.BLOCK_SIDE_LENGTH));
+            probes[i] = p;
+        }
+        return probes;
+    }
+}
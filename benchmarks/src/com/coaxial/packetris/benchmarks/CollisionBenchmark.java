@@ -0,0 +1,72 @@
+package com.coaxial.packetris.benchmarks;
+
+import com.coaxial.packetris.elements.Grid;
+import com.coaxial.packetris.elements.Packet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the collision queries of the {@link Grid} against boards at different fill levels.
+ * <p>
+ * {@code fits} and {@code countOverlaps} are what moving and rotating a packet cost,
+ * {@code landAndCountTouches} is the work done once a packet lands (formerly calculateOverlaysOf),
+ * {@code landingRow} is the uncached landing computation done after every move or rotation.
+ */
+
+@State(Scope.Thread)
+public class CollisionBenchmark
+{
+    private static final int PROBES = 1024; //power of two, see next()
+
+    @Param({"0.1", "0.5", "0.9"})
+    public double fill;
+
+    private Grid grid;
+    private Packet[] probes;
+    private int index = 0;
+
+    @Setup
+    public void setUp()
+    {
+        grid = Boards.filled(fill, 42);
+        probes = Boards.probes(PROBES, false, 7);
+    }
+
+    private Packet next()
+    {
+        return probes[index++ & (PROBES - 1)];
+    }
+
+    @Benchmark
+    public boolean fits()
+    {
+        return grid.fits(next());
+    }
+
+    @Benchmark
+    public int countOverlaps()
+    {
+        return grid.countOverlaps(next());
+    }
+
+    @Benchmark
+    public int landingRow()
+    {
+        Packet p = next();
+        return grid.landingRow(p.getShape(), p.getPosX(), p.getRow());
+    }
+
+    @Benchmark
+    public int landAndCountTouches()
+    {
+        Packet p = next();
+        float posY = p.getPosY();
+        p.setPosY(p.getLandingPosY(grid));
+        int touches = grid.countTouches(p);
+        p.setPosY(posY);
+        return touches;
+    }
+}
@@ -0,0 +1,48 @@
+package com.coaxial.packetris.benchmarks;
+
+import com.coaxial.packetris.GameType;
+import com.coaxial.packetris.engine.Action;
+import com.coaxial.packetris.engine.GameEngine;
+import com.coaxial.packetris.util.SplitRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Benchmarks whole simulation ticks of the {@link GameEngine} with random input, starting a new round
+ * whenever the current one is over. This covers the board at every fill level a real round goes through.
+ */
+
+@State(Scope.Thread)
+public class EngineBenchmark
+{
+    private static final Action[] ACTIONS = Action.values();
+
+    @Param({"DEFAULT", "SPEED"})
+    public GameType type;
+
+    private GameEngine engine;
+    private Random random;
+    private long rounds = 0;
+
+    @Setup
+    public void setUp()
+    {
+        random = new SplitRandom(21);
+        engine = new GameEngine(type, null, rounds++);
+    }
+
+    @Benchmark
+    public GameEngine tick()
+    {
+        if (engine.isGameOver())
+            engine = new GameEngine(type, null, rounds++);
+        engine.apply(ACTIONS[random.nextInt(ACTIONS.length)]);
+        engine.tick();
+        return engine;
+    }
+}
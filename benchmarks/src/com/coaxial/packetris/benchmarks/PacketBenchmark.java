@@ -0,0 +1,63 @@
+package com.coaxial.packetris.benchmarks;
+
+import com.coaxial.packetris.elements.Grid;
+import com.coaxial.packetris.elements.Packet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the operations of a single {@link Packet}: rotating it against boards at different fill levels
+ * and calculating the base points when it stops moving.
+ *
+ * @see PacketGenerationBenchmark
+ */
+
+@State(Scope.Thread)
+public class PacketBenchmark
+{
+    private static final int PROBES = 1024; //power of two, see next()
+
+    @Param({"0.1", "0.5", "0.9"})
+    public double fill;
+
+    @Param({"false", "true"})
+    public boolean blockOnly;
+
+    private Grid grid;
+    private Packet[] probes;
+    private Packet rotated; //reset to a probe before every rotation, so the probes never drift
+    private int index = 0;
+
+    @Setup
+    public void setUp()
+    {
+        grid = Boards.filled(fill, 42);
+        probes = Boards.probes(PROBES, blockOnly, 7);
+        rotated = new Packet(probes[0].getShape());
+    }
+
+    private Packet next()
+    {
+        return probes[index++ & (PROBES - 1)];
+    }
+
+    @Benchmark
+    public Packet rotate()
+    {
+        Packet probe = next();
+        rotated.reset(probe.getShape());
+        rotated.setPosX(probe.getPosX());
+        rotated.setPosY(probe.getPosY());
+        rotated.rotate((index & PROBES) == 0, grid); //alternate the direction every round through all probes
+        return rotated;
+    }
+
+    @Benchmark
+    public int setMoving()
+    {
+        return next().setMoving(false);
+    }
+}
@@ -0,0 +1,49 @@
+package com.coaxial.packetris.benchmarks;
+
+import com.coaxial.packetris.GameType;
+import com.coaxial.packetris.elements.Packet;
+import com.coaxial.packetris.elements.Shape;
+import com.coaxial.packetris.elements.ShapeCatalog;
+import com.coaxial.packetris.util.SplitRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Benchmarks the generation of random packets with the bounding boxes used when spawning packets.
+ */
+
+@State(Scope.Thread)
+public class PacketGenerationBenchmark
+{
+    @Param({"false", "true"})
+    public boolean blockOnly;
+
+    @Param({"java.util.Random", "SplitRandom"})
+    public String generator;
+
+    private Random random;
+
+    @Setup
+    public void setUp()
+    {
+        random = generator.equals("SplitRandom") ? new SplitRandom(13) : new Random(13);
+    }
+
+    @Benchmark
+    public Packet random()
+    {
+        int x = 1 << (1 + random.nextInt(3));
+        return Packet.random(x, 16 / x, blockOnly, random);
+    }
+
+    @Benchmark
+    public Shape spawnShape()
+    {
+        return ShapeCatalog.forType(blockOnly ? GameType.SPEED : GameType.DEFAULT).sample(random);
+    }
+}
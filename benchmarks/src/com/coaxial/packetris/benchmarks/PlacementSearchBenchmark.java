@@ -0,0 +1,86 @@
+package com.coaxial.packetris.benchmarks;
+
+import com.coaxial.packetris.GameType;
+import com.coaxial.packetris.elements.Grid;
+import com.coaxial.packetris.elements.Packet;
+import com.coaxial.packetris.engine.GameEngine;
+import com.coaxial.packetris.engine.PlacementSearch;
+import com.coaxial.packetris.util.BackgroundPool;
+import com.coaxial.packetris.util.SplitRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Benchmarks a {@link PlacementSearch} with the full lookahead on the calling thread and on the
+ * {@link BackgroundPool}, in positions of rounds at growing fill levels. Before measuring, both searches are run
+ * on every position and must find the same placement.
+ */
+
+@State(Scope.Thread)
+public class PlacementSearchBenchmark
+{
+    private static final int POSITIONS = 16;
+    private static final int PACKETS_PER_POSITION = 3; //packets dropped at random before each further position
+
+    @Param({"serial", "parallel"})
+    public String mode;
+
+    private final Grid[] grids = new Grid[POSITIONS];
+    private final Packet[] packets = new Packet[POSITIONS];
+    private int positions = 0;
+    private PlacementSearch search;
+    private int position = 0;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new SplitRandom(24);
+        for (long seed = 0; positions < POSITIONS; ++seed)
+        {
+            GameEngine engine = new GameEngine(GameType.DEFAULT, null, seed);
+            for (int i = 0; positions < POSITIONS && !engine.isGameOver(); ++i)
+            {
+                if (i % PACKETS_PER_POSITION == 0)
+                {
+                    grids[positions] = new Grid();
+                    grids[positions].set(engine.getGrid());
+                    Packet falling = engine.getCurrentPacket();
+                    packets[positions] = new Packet(falling.getShape());
+                    packets[positions].setPosX(falling.getPosX());
+                    packets[positions].setPosY(falling.getPosY());
+                    positions++;
+                }
+                engine.dropAt(random.nextInt(Grid.COLUMNS), random.nextInt(4));
+            }
+        }
+
+        PlacementSearch serial = new PlacementSearch(GameType.DEFAULT, PlacementSearch.MAX_LOOKAHEAD, null);
+        PlacementSearch parallel = new PlacementSearch(GameType.DEFAULT, PlacementSearch.MAX_LOOKAHEAD,
+                BackgroundPool.get());
+        for (int i = 0; i < POSITIONS; ++i)
+            if (!same(serial.search(grids[i], packets[i]), parallel.search(grids[i], packets[i])))
+                throw new IllegalStateException("Parallel search differs from the serial one at position " + i);
+        search = "parallel".equals(mode) ? parallel : serial;
+    }
+
+    private static boolean same(PlacementSearch.Placement a, PlacementSearch.Placement b)
+    {
+        if (a == null || b == null)
+            return a == b;
+        return a.getShape().getBits() == b.getShape().getBits() && a.getShape().getWidth() == b.getShape().getWidth()
+                && a.getColumn() == b.getColumn() && a.getRow() == b.getRow()
+                && a.getPoints() == b.getPoints() && a.getValue() == b.getValue();
+    }
+
+    @Benchmark
+    public PlacementSearch.Placement search()
+    {
+        int i = position++ % POSITIONS;
+        return search.search(grids[i], packets[i]);
+    }
+}
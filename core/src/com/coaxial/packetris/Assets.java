@@ -0,0 +1,385 @@
+package com.coaxial.packetris;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.assets.AssetDescriptor;
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.assets.loaders.TextureLoader;
+import com.badlogic.gdx.audio.Music;
+import com.badlogic.gdx.audio.Sound;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
+import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGeneratorLoader;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.TimeUtils;
+import com.coaxial.packetris.util.BakedFont;
+import com.coaxial.packetris.util.BakedFontLoader;
+import com.coaxial.packetris.util.Backgrounds;
+import com.coaxial.packetris.util.FontStyle;
+import com.coaxial.packetris.util.TextureMemory;
+
+/**
+ * Central cache of all assets, owned by the {@link PacketrisGame} instance and built on an {@link AssetManager}.
+ * <p>
+ * All assets are loaded asynchronously right after start, while the {@link IntroScreen} is shown; {@link #update()}
+ * is called once per frame and spends only a few milliseconds on the render thread. As soon as the UI images
+ * and the fonts are loaded, the {@link UiAtlas} is built.
+ * <p>
+ * The fonts are baked into bitmap fonts at build time (see the tools module), so FreeType is only run on the
+ * device if a baked font is missing or lacks a glyph the game needs. Fonts generated this way are written to
+ * the local storage and loaded from there on the next start.
+ * <p>
+ * Backgrounds are loaded from the pre-compressed variant fitting the screen, see {@link Backgrounds}; the file
+ * names of this class name the original images and are mapped to their variants.
+ * <p>
+ * Screens {@link #acquire(String, Class)} the assets they use and {@link #release(String)} them when they are
+ * disposed. The asset manager counts these references, so assets stay loaded while any screen uses them -
+ * replaying a round or returning to the menu does not load anything. Additionally, the cache holds one reference
+ * to every asset, which is given up by {@link #trim()} when the app is paused or memory is low, and taken again
+ * by {@link #cache()}.
+ */
+
+public class Assets implements Disposable
+{
+    public static final String GAME_BACKGROUND = "newbg.png";
+    public static final String MENU_BACKGROUND = "raw_bg.png";
+    public static final String HIT_SOUND = "hit.wav";
+    public static final String GAME_OVER_SOUND = "game_over.wav";
+    public static final String GAME_MUSIC = "game_bg2.mp3";
+    public static final String SPEED_MUSIC = "game_bg_fast.mp3";
+    public static final String MENU_MUSIC = "main_menu_bg.mp3";
+    private static final String TAG = "Assets";
+    private static final int UPDATE_TIME = 8; //maximum time per frame spent on loading in milliseconds
+
+
+    private final AssetManager manager = new AssetManager();
+    private final AssetDescriptor<?>[] cachedAssets;
+    private final ObjectMap<String, AssetDescriptor<?>> descriptors = new ObjectMap<String, AssetDescriptor<?>>();
+    private boolean cached = false; //true if the cache holds its references
+    private UiAtlas atlas; //null until the UI has been built
+    private BitmapFont ingameFont;
+    private BitmapFont titleFont;
+    private final BakedFont[] fonts = new BakedFont[FontStyle.values().length]; //null until a font is available
+    private final boolean[] generate = new boolean[FontStyle.values().length]; //true if FreeType has to be used
+    private boolean generatorQueued = false;
+    private final long startTime = TimeUtils.nanoTime(); //for logging the startup time
+
+    /**
+     * Queues all assets for loading. The UI is queued first, so it is ready as early as possible.
+     */
+    public Assets()
+    {
+        manager.setLoader(FreeTypeFontGenerator.class, new FreeTypeFontGeneratorLoader(manager.getFileHandleResolver()));
+        BakedFontLoader fontLoader = new BakedFontLoader();
+        manager.setLoader(BakedFont.class, fontLoader);
+        cachedAssets = new AssetDescriptor<?>[]{
+                background(GAME_BACKGROUND),
+                background(MENU_BACKGROUND),
+                new AssetDescriptor<Sound>(HIT_SOUND, Sound.class),
+                new AssetDescriptor<Sound>(GAME_OVER_SOUND, Sound.class),
+                new AssetDescriptor<Music>(GAME_MUSIC, Music.class),
+                new AssetDescriptor<Music>(SPEED_MUSIC, Music.class),
+                new AssetDescriptor<Music>(MENU_MUSIC, Music.class)};
+        descriptors.put(GAME_BACKGROUND, cachedAssets[0]);
+        descriptors.put(MENU_BACKGROUND, cachedAssets[1]);
+
+        UiAtlas.queue(manager);
+        for (FontStyle style : FontStyle.values())
+        {
+            if (fontLoader.resolve(style.getFileName()).exists())
+                manager.load(style.getFileName(), BakedFont.class);
+            else
+                requestGenerator(style);
+        }
+        cache();
+    }
+
+    /**
+     * Continues loading for a few milliseconds and builds the UI as soon as its assets are available.
+     * Call once per frame.
+     *
+     * @return true if all assets are loaded; false otherwise
+     */
+    public boolean update()
+    {
+        boolean finished = manager.update(UPDATE_TIME);
+        if (atlas == null && UiAtlas.isLoaded(manager) && fontsAvailable())
+            buildUi();
+        return finished && atlas != null;
+    }
+
+    /**
+     * Checks the baked fonts that have been loaded and falls back to FreeType for those lacking a glyph.
+     * Fonts cached on the device were generated by FreeType for the baked fonts currently shipped, so they are not
+     * checked again.
+     *
+     * @return true if every font is either loaded or can be generated; false otherwise
+     */
+    private boolean fontsAvailable()
+    {
+        boolean available = true;
+        for (FontStyle style : FontStyle.values())
+        {
+            int i = style.ordinal();
+            if (fonts[i] == null && !generate[i] && manager.isLoaded(style.getFileName(), BakedFont.class))
+            {
+                BakedFont font = manager.get(style.getFileName(), BakedFont.class);
+                if (font.isCached() || font.hasGlyphs(FontStyle.REQUIRED_CHARS))
+                    fonts[i] = font;
+                else
+                {
+                    Gdx.app.log(TAG, style.getFileName() + " lacks glyphs, falling back to FreeType");
+                    manager.unload(style.getFileName());
+                    requestGenerator(style);
+                }
+            }
+            if (fonts[i] == null && !(generate[i] && manager.isLoaded(FontStyle.SOURCE, FreeTypeFontGenerator.class)))
+                available = false;
+        }
+        return available;
+    }
+
+    /**
+     * Creates the descriptor of the background variant fitting the back buffer. Mipmaps are only sampled if the
+     * device supports them for textures whose size is not a power of two.
+     */
+    private static AssetDescriptor<Texture> background(String image)
+    {
+        String fileName = Backgrounds.select(image, Gdx.graphics.getBackBufferHeight());
+        if (!Backgrounds.isCompressed(fileName))
+            return new AssetDescriptor<Texture>(fileName, Texture.class);
+        TextureLoader.TextureParameter param = new TextureLoader.TextureParameter();
+        param.minFilter = Gdx.graphics.isGL30Available() || Gdx.graphics.supportsExtension("GL_OES_texture_npot")
+                ? Texture.TextureFilter.MipMapLinearNearest : Texture.TextureFilter.Linear;
+        param.magFilter = Texture.TextureFilter.Linear;
+        return new AssetDescriptor<Texture>(fileName, Texture.class, param);
+    }
+
+    private void requestGenerator(FontStyle style)
+    {
+        generate[style.ordinal()] = true;
+        if (!generatorQueued)
+        {
+            generatorQueued = true;
+            manager.load(FontStyle.SOURCE, FreeTypeFontGenerator.class);
+        }
+    }
+
+    /**
+     * Generates the missing fonts and packs the UI atlas, including the pages of the fonts.
+     */
+    private void buildUi()
+    {
+        long buildStart = TimeUtils.nanoTime();
+        if (generatorQueued)
+        {
+            FreeTypeFontGenerator generator = manager.get(FontStyle.SOURCE, FreeTypeFontGenerator.class);
+            for (FontStyle style : FontStyle.values())
+                if (generate[style.ordinal()])
+                {
+                    BakedFont font = BakedFont.generate(generator, style.getSize());
+                    try
+                    {
+                        font.write(Gdx.files.local(style.getFileName())); //cache for the next start
+                        BakedFontLoader.markCached(style.getFileName());
+                    }
+                    catch (GdxRuntimeException e)
+                    {
+                        Gdx.app.error(TAG, "Could not cache " + style.getFileName(), e);
+                    }
+                    fonts[style.ordinal()] = font;
+                }
+            manager.unload(FontStyle.SOURCE); //disposes the generator
+        }
+
+        UiAtlas newAtlas = new UiAtlas(manager);
+        for (FontStyle style : FontStyle.values())
+            newAtlas.getPacker().pack(style.name(), fonts[style.ordinal()].getPage());
+        newAtlas.finish();
+        ingameFont = fonts[FontStyle.INGAME.ordinal()].createFont(newAtlas.get(FontStyle.INGAME.name()));
+        titleFont = fonts[FontStyle.TITLE.ordinal()].createFont(newAtlas.get(FontStyle.TITLE.name()));
+
+        //the pages have been copied to the atlas
+        for (FontStyle style : FontStyle.values())
+        {
+            if (generate[style.ordinal()])
+                fonts[style.ordinal()].dispose();
+            else
+                manager.unload(style.getFileName());
+            fonts[style.ordinal()] = null;
+        }
+        atlas = newAtlas;
+        Gdx.app.log(TAG, "UI built " + (TimeUtils.nanoTime() - startTime) / 1000000 + " ms after start, "
+                + (TimeUtils.nanoTime() - buildStart) / 1000000 + " ms on the render thread"
+                + (generatorQueued ? " (fonts generated by FreeType)" : " (baked fonts)"));
+    }
+
+    /**
+     * @return true if the atlas and the fonts can be used; false otherwise
+     */
+    public boolean isUiReady()
+    {
+        return atlas != null;
+    }
+
+    /**
+     * @return true if all assets are loaded; false otherwise
+     */
+    public boolean isFinished()
+    {
+        return atlas != null && manager.getQueuedAssets() == 0;
+    }
+
+    /**
+     * Takes a reference to an asset. If the asset is not loaded yet, it is loaded immediately.
+     * Every call must be matched by a call of {@link #release(String)}.
+     *
+     * @param fileName the file name of the asset, see the constants of this class
+     * @param type     the type of the asset
+     * @return the asset
+     */
+    public <T> T acquire(String fileName, Class<T> type)
+    {
+        request(fileName, type);
+        String resolved = resolve(fileName);
+        manager.finishLoadingAsset(resolved);
+        return manager.get(resolved, type);
+    }
+
+    /**
+     * Takes a reference to an asset like {@link #acquire(String, Class)}, but does not wait for the asset to be
+     * loaded; check {@link #isLoaded(String)} before calling {@link #get(String, Class)}.
+     * Every call must be matched by a call of {@link #release(String)}.
+     *
+     * @param fileName the file name of the asset, see the constants of this class
+     * @param type     the type of the asset
+     */
+    public void request(String fileName, Class<?> type)
+    {
+        AssetDescriptor<?> descriptor = descriptors.get(fileName);
+        if (descriptor == null)
+            manager.load(fileName, type);
+        else
+            manager.load(descriptor);
+    }
+
+    /**
+     * @param fileName the file name of the asset
+     * @return true if the asset is loaded; false otherwise
+     */
+    public boolean isLoaded(String fileName)
+    {
+        return manager.isLoaded(resolve(fileName));
+    }
+
+    /**
+     * Returns a loaded asset a reference has been taken to.
+     *
+     * @param fileName the file name of the asset
+     * @param type     the type of the asset
+     * @return the asset
+     */
+    public <T> T get(String fileName, Class<T> type)
+    {
+        return manager.get(resolve(fileName), type);
+    }
+
+    /**
+     * Gives up a reference taken by {@link #acquire(String, Class)}. The asset is unloaded when it is not
+     * referenced anymore.
+     *
+     * @param fileName the file name of the asset
+     */
+    public void release(String fileName)
+    {
+        manager.unload(resolve(fileName));
+    }
+
+    /**
+     * Maps the file name of an original image to the variant actually loaded.
+     */
+    private String resolve(String fileName)
+    {
+        AssetDescriptor<?> descriptor = descriptors.get(fileName);
+        return descriptor == null ? fileName : descriptor.fileName;
+    }
+
+    /**
+     * Takes the references of the cache, loading all assets asynchronously that are not loaded yet.
+     */
+    public void cache()
+    {
+        if (cached)
+            return;
+        cached = true;
+        for (AssetDescriptor<?> descriptor : cachedAssets)
+            manager.load(descriptor);
+    }
+
+    /**
+     * Gives up the references of the cache, unloading all assets that are not used by a screen.
+     */
+    public void trim()
+    {
+        if (!cached)
+            return;
+        cached = false;
+        for (AssetDescriptor<?> descriptor : cachedAssets)
+            manager.unload(descriptor.fileName);
+    }
+
+    /**
+     * Logs the estimated GPU memory used by all loaded textures and the atlas.
+     */
+    public void logTextureMemory()
+    {
+        long total = 0;
+        StringBuilder details = new StringBuilder();
+        Array<String> names = manager.getAssetNames();
+        for (String name : names)
+            if (manager.getAssetType(name) == Texture.class)
+            {
+                long size = TextureMemory.estimate(manager.get(name, Texture.class));
+                details.append(", ").append(name).append(": ").append(size / 1024).append(" KB");
+                total += size;
+            }
+        if (atlas != null)
+            for (Texture texture : atlas.getTextures())
+            {
+                long size = TextureMemory.estimate(texture);
+                details.append(", atlas page: ").append(size / 1024).append(" KB");
+                total += size;
+            }
+        Gdx.app.log(TAG, "Texture memory: " + total / 1024 + " KB" + details);
+    }
+
+    public UiAtlas getAtlas()
+    {
+        return atlas;
+    }
+
+    public BitmapFont getIngameFont()
+    {
+        return ingameFont;
+    }
+
+    public BitmapFont getTitleFont()
+    {
+        return titleFont;
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (atlas != null)
+        {
+            ingameFont.dispose();
+            titleFont.dispose();
+            atlas.dispose();
+        }
+        manager.dispose();
+    }
+}
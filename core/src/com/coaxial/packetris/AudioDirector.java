@@ -0,0 +1,223 @@
+package com.coaxial.packetris;
+
+import com.badlogic.gdx.audio.Music;
+import com.badlogic.gdx.audio.Sound;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.TimeUtils;
+
+import java.util.Arrays;
+
+/**
+ * Plays all music and sound effects, owned by the {@link PacketrisGame} instance.
+ * <p>
+ * Screens only tell the director which track should be playing; switching to another track crossfades, while
+ * requesting the track that is already playing just keeps it running - so returning from the result screen of
+ * a game to the menu does not restart the menu music. Tracks are streamed, with one instance per track shared by
+ * all screens. They are requested from the {@link Assets} without waiting, so opening a decoder never blocks the
+ * render thread; a track starts as soon as it has been loaded in the background.
+ * <p>
+ * Sound effects are short and kept loaded as decoded PCM for the whole lifetime of the game. Every effect has a
+ * limited number of voices: if all of them are in use, the oldest one is stopped. Playing an effect again within
+ * a few milliseconds is ignored, since the voices would just add up to a louder sound.
+ */
+
+public class AudioDirector implements Disposable
+{
+    public static final int MAX_VOICES = 4; //concurrent sound effects of all kinds
+    private static final float CROSSFADE_TIME = 0.6f; //in seconds
+    private static final long MIN_REPLAY_INTERVAL = 40; //in milliseconds
+
+    /**
+     * The sound effects of the game. The voices of all effects sum up to {@link #MAX_VOICES}.
+     */
+    public enum Effect
+    {
+        HIT(Assets.HIT_SOUND, 3),
+        GAME_OVER(Assets.GAME_OVER_SOUND, 1);
+
+        private final String fileName;
+        private final int voices;
+
+        Effect(String fileName, int voices)
+        {
+            this.fileName = fileName;
+            this.voices = voices;
+        }
+    }
+
+    private final Assets assets;
+    private final Sound[] sounds = new Sound[Effect.values().length]; //null until loaded
+    private final long[][] voices = new long[Effect.values().length][]; //ids of the latest instances per effect
+    private final int[] nextVoice = new int[Effect.values().length];
+    private final long[] lastPlayed = new long[Effect.values().length];
+
+    private final Track current = new Track(); //fading in or playing
+    private final Track previous = new Track(); //fading out
+
+    public AudioDirector(Assets assets)
+    {
+        this.assets = assets;
+        for (Effect effect : Effect.values())
+        {
+            assets.request(effect.fileName, Sound.class); //never released before dispose
+            voices[effect.ordinal()] = new long[effect.voices];
+            Arrays.fill(voices[effect.ordinal()], -1);
+        }
+    }
+
+    /**
+     * Plays a sound effect. Does nothing if the effect has not been loaded yet or has just been played.
+     *
+     * @param effect the effect
+     * @param volume the volume, between 0 and 1
+     */
+    public void play(Effect effect, float volume)
+    {
+        int i = effect.ordinal();
+        if (sounds[i] == null)
+        {
+            if (!assets.isLoaded(effect.fileName))
+                return;
+            sounds[i] = assets.get(effect.fileName, Sound.class);
+        }
+        long now = TimeUtils.millis();
+        if (now - lastPlayed[i] < MIN_REPLAY_INTERVAL)
+            return;
+        lastPlayed[i] = now;
+
+        long[] ids = voices[i];
+        int voice = nextVoice[i];
+        if (ids[voice] != -1)
+            sounds[i].stop(ids[voice]); //does nothing if the instance has already finished
+        ids[voice] = sounds[i].play(volume);
+        nextVoice[i] = (voice + 1) % ids.length;
+    }
+
+    /**
+     * Crossfades to a track. If the track is already the current one, only its volume and looping are changed;
+     * it is restarted if it has been played once and finished.
+     *
+     * @param fileName the file name of the track, see {@link Assets}
+     * @param volume   the volume, between 0 and 1
+     * @param looping  true if the track should be repeated; false if it should be played once
+     */
+    public void playMusic(String fileName, float volume, boolean looping)
+    {
+        if (fileName.equals(current.fileName))
+        {
+            current.targetVolume = volume;
+            current.looping = looping;
+            if (current.music != null)
+            {
+                current.music.setLooping(looping);
+                if (!current.music.isPlaying())
+                {
+                    current.time = 0;
+                    current.music.setVolume(0);
+                    current.music.play();
+                }
+            }
+            return;
+        }
+        fadeOut();
+        current.fileName = fileName;
+        current.targetVolume = volume;
+        current.looping = looping;
+        current.time = 0;
+        assets.request(fileName, Music.class);
+    }
+
+    /**
+     * Fades out the current track.
+     */
+    public void stopMusic()
+    {
+        fadeOut();
+    }
+
+    /**
+     * Starts loaded tracks and advances the fades. Call once per frame.
+     *
+     * @param delta the time since the last frame in seconds
+     */
+    public void update(float delta)
+    {
+        if (current.fileName != null)
+        {
+            if (current.music == null && assets.isLoaded(current.fileName))
+            {
+                current.music = assets.get(current.fileName, Music.class);
+                current.music.setLooping(current.looping);
+                current.music.setVolume(0);
+                current.music.play();
+            }
+            if (current.music != null)
+            {
+                current.time += delta;
+                current.music.setVolume(current.targetVolume * Math.min(1, current.time / CROSSFADE_TIME));
+            }
+        }
+        if (previous.fileName != null)
+        {
+            previous.time += delta;
+            if (previous.time >= CROSSFADE_TIME)
+                previous.stop(assets);
+            else
+                previous.music.setVolume(previous.targetVolume * (1 - previous.time / CROSSFADE_TIME));
+        }
+    }
+
+    /**
+     * Moves the current track to the fading out one. A track still fading out is stopped immediately.
+     */
+    private void fadeOut()
+    {
+        previous.stop(assets);
+        if (current.fileName == null)
+            return;
+        if (current.music == null) //not started yet
+        {
+            current.stop(assets);
+            return;
+        }
+        previous.fileName = current.fileName;
+        previous.music = current.music;
+        previous.targetVolume = current.music.getVolume();
+        previous.time = 0;
+        current.fileName = null;
+        current.music = null;
+    }
+
+    @Override
+    public void dispose()
+    {
+        previous.stop(assets);
+        current.stop(assets);
+        for (Effect effect : Effect.values())
+            assets.release(effect.fileName);
+    }
+
+    /**
+     * A track and the state of its fade. The director holds a reference to the track from requesting it
+     * until it has been stopped.
+     */
+    private static class Track
+    {
+        private String fileName; //null if no track
+        private Music music; //null until loaded
+        private float targetVolume;
+        private boolean looping;
+        private float time; //since the fade started, in seconds
+
+        private void stop(Assets assets)
+        {
+            if (fileName == null)
+                return;
+            if (music != null)
+                music.stop();
+            assets.release(fileName);
+            fileName = null;
+            music = null;
+        }
+    }
+}
@@ -2,27 +2,42 @@ package com.coaxial.packetris;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input;
-import com.badlogic.gdx.Preferences;
 import com.badlogic.gdx.Screen;
-import com.badlogic.gdx.audio.Music;
-import com.badlogic.gdx.audio.Sound;
-import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.GlyphLayout;
-import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
-import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Pool;
+import com.badlogic.gdx.utils.StringBuilder;
 import com.coaxial.packetris.elements.MovingText;
 import com.coaxial.packetris.elements.Packet;
+import com.coaxial.packetris.elements.PacketLayer;
+import com.coaxial.packetris.elements.PacketRenderer;
+import com.coaxial.packetris.engine.Action;
+import com.coaxial.packetris.engine.GameEngine;
+import com.coaxial.packetris.engine.InputSource;
+import com.coaxial.packetris.engine.Layout;
+import com.coaxial.packetris.engine.PackingSolver;
+import com.coaxial.packetris.engine.PlacementAdvisor;
+import com.coaxial.packetris.engine.PlacementSearch;
+import com.coaxial.packetris.engine.Reachability;
+import com.coaxial.packetris.engine.Replay;
+import com.coaxial.packetris.util.BackgroundPool;
+import com.coaxial.packetris.util.BatchShapes;
 import com.coaxial.packetris.util.Easing;
+import com.coaxial.packetris.util.FrameProfiler;
+import com.coaxial.packetris.util.FrameProfiler.Phase;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinTask;
 
-import java.util.Iterator;
 
 /**
  * Represents a single game round. Renders all packets, backgrounds, point indicator, controls etc. that are necessary for the game to be playpable.
+ * The rules of the game are implemented by a {@link GameEngine}, which is driven by this screen once per frame.
  * <p>
  * Displays results after the game finishes.
  * <p>
@@ -30,43 +45,73 @@ import java.util.Iterator;
  * While in the DEFAULT-Mode complex packet structures are possible, i
  * n the SPEED-Mode only simplified packet forms are used (so called block-Only-Packets). Please see {@link Packet} class.
  * Also, in the SPEED Mode the speed of the packets moving down is doubled, which makes it really difficult to place them in time.
+ * <p>
+ * Every round played by the user is recorded and saved as a {@link Replay}. The screen can also play a replay
+ * instead of taking input; touching the screen then switches the playback speed.
+ * <p>
+ * Touching the main field shows or hides a hint: the best placement of the falling packet, searched in the
+ * background by a {@link PlacementAdvisor} and drawn as a ghost once it has been found. After game over, the score
+ * is rated against the best one a {@link PackingSolver} finds for the same packets.
  *
  * @see GameType
+ * @see GameEngine
  * @see MovingText
  */
-public class GameScreen implements Screen
+public class GameScreen implements Screen, GameEngine.Listener
 {
-    public static final int BOTTOM_SPACE = 200; //space under the main field
-    public static final int SIDE_SPACE = 64; //space left and right of the main field
+    public static final int BOTTOM_SPACE = Layout.BOTTOM_SPACE; //space under the main field
+    public static final int SIDE_SPACE = Layout.SIDE_SPACE; //space left and right of the main field
     public static final int CTRL_LENGTH = 140; //side length of control buttons
+    private static final float AUTOPLAY_RESULT_TIME = 2; //time the results are shown before an autoplayed round restarts
+    private static final String HINTS_KEY = "hints"; //persisted 1 if hints are shown
+    private static final int HINT_LOOKAHEAD = 1; //following packets considered by the hint
 
     private final PacketrisGame game;
     private final GameType type;
-
-    private Texture right_move; //control button
-    private Texture left_move;
-    private Texture right_rotate;
-    private Texture left_rotate;
+    private final FrameProfiler profiler; //times the phases of each frame, if enabled
+
+    private TextureRegion right_move; //control button, from the UI atlas
+    private TextureRegion left_move;
+    private TextureRegion right_rotate;
+    private TextureRegion left_rotate;
+    private TextureRegion redo;
+    private TextureRegion cup;
+    private TextureRegion pixel; //white pixel for drawing shapes
     private Texture background;
-    private Texture redo;
-    private Texture cup;
-    private Sound hitSound;
-    private Sound gameOver;
-    private Music backgroundMusic;
-    private Music afterGameMusic;
+    private String backgroundMusicFile; //depends on the game type
     private OrthographicCamera camera; //needed by libgdx
-    private Array<Packet> packets = new Array<Packet>(); //contains all currently existing packets
+    private final GameEngine engine; //the rules and state of this round
+    private final PacketLayer settledPackets; //packets that do not move anymore, rendered once when they land
     private Array<MovingText> texts = new Array<MovingText>(); //contains all currently existing MovingTexts
+    private final Pool<MovingText> textPool = new Pool<MovingText>() //reuses MovingTexts that are not shown anymore
+    {
+        @Override
+        protected MovingText newObject()
+        {
+            return new MovingText();
+        }
+    };
+    private final Vector3 touchPos = new Vector3(); //reused for unprojecting touch positions
+    private final StringBuilder scoreText = new StringBuilder(16); //reused for building score texts
+    private final StringBuilder rankText = new StringBuilder(32); //rank among all rounds, built at game over
+    private final StringBuilder[] topText = {new StringBuilder(64), new StringBuilder(64)}; //best rounds, 2 columns
+    private final StringBuilder efficiencyText = new StringBuilder(32); //score relative to the best one found
+    private ForkJoinTask<PackingSolver.Result> optimum; //searched in the background after game over; null before
+    private float optimumTime; //time since game over when the efficiency has been shown first
+    private final long seed; //seed of the packet generation, saved with the round
+    private final Replay replay; //recording of this round, or the replay played back
+    private final Replay.Playback playback; //null if the round is played by the user
+    private final InputSource input; //plays the round instead of the user; null if the user plays
+    private final PlacementAdvisor advisor; //searches the hint in the background; null if the user does not play
+    private boolean hints; //true if the best placement is shown as a ghost
+    private int hintPackets = -1; //placed packets when the current hint was requested
+    private int hintLevel; //height of the falling packet in half blocks when the current hint was requested
 
-    private int fullScore = 0; //count score
     private boolean touched = false; //touched in last frame?
-    private boolean dospawn = true; //spawn new packets? = is the game over?
-    private float initial_waiting = 2; //waiting before the first packet
     private float result_time = 0; //time passed since game over
     private float overall_time = 0; //time passed since game start
     private GlyphLayout glyphLayout; //glyphlayout used to calculate text widths
 
-    private Preferences save = Gdx.app.getPreferences("ScoreSave"); //libgdx Preferences to save highscore
     private boolean newbest = false; //will be set to true if the newscore is the new highscore
     private int best; //current highscore
     private float fadeOutStarter = -1; //start time for fading out this instance for a replay (fade out)
@@ -76,48 +121,77 @@ public class GameScreen implements Screen
 
     /**
      * Create a new game screen - the game is started immediately right after the creation.
-     * Loads all resources and spawns the first packet.
+     * Takes all resources from the asset cache and sets up the engine, which spawns the first packet.
      *
      * @param gam       the main game instance
      * @param type      the type of this game round
      * @param restarted should be true if this instance is created from anywhere else than a menu; false otherwise
      */
     public GameScreen(final PacketrisGame gam, GameType type, boolean restarted)
+    {
+        this(gam, type, restarted, new Replay(type, gam.newSeed()), null);
+    }
+
+    /**
+     * Create a new game screen playing a replay - the playback is started immediately right after the creation.
+     *
+     * @param gam       the main game instance
+     * @param replay    the replay to play
+     * @param speed     the initial playback speed
+     * @param restarted should be true if this instance is created from anywhere else than a menu; false otherwise
+     */
+    public GameScreen(final PacketrisGame gam, Replay replay, Replay.Speed speed, boolean restarted)
+    {
+        this(gam, replay.getType(), restarted, replay, speed);
+    }
+
+    private GameScreen(final PacketrisGame gam, GameType type, boolean restarted, Replay replay, Replay.Speed speed)
     {
         this.game = gam;
         this.restarted = restarted;
         this.type = type;
-        best = save.getInteger("score" + type.toString(), 0);
+        profiler = game.getProfiler();
+        best = game.getPersistence().getInteger("score" + type.toString(), 0);
 
         glyphLayout = new GlyphLayout();
 
-        right_move = new Texture(Gdx.files.internal("right_move.png"));
-        right_rotate = new Texture(Gdx.files.internal("right_rotate.png"));
-        left_move = new Texture(Gdx.files.internal("left_move.png"));
-        left_rotate = new Texture(Gdx.files.internal("left_rotate.png"));
-        background = new Texture(Gdx.files.internal("newbg.png"));
-        redo = new Texture(Gdx.files.internal("redo.png"));
-        cup = new Texture(Gdx.files.internal("cup.png"));
-
-        hitSound = Gdx.audio.newSound(Gdx.files.internal("hit.wav"));
-        gameOver = Gdx.audio.newSound(Gdx.files.internal("game_over.wav"));
-        backgroundMusic = Gdx.audio.newMusic(Gdx.files.internal(type == GameType.DEFAULT ? "game_bg2.mp3" : "game_bg_fast.mp3"));
-        backgroundMusic.setLooping(true);
-        backgroundMusic.setVolume(type == GameType.SPEED ? 0.25f : 0.4f);
-        afterGameMusic = Gdx.audio.newMusic(Gdx.files.internal("main_menu_bg.mp3")); //same as main menu bg music
-        afterGameMusic.setLooping(false);
-        afterGameMusic.setVolume(0.5f);
+        right_move = game.getAtlas().get("right_move");
+        right_rotate = game.getAtlas().get("right_rotate");
+        left_move = game.getAtlas().get("left_move");
+        left_rotate = game.getAtlas().get("left_rotate");
+        redo = game.getAtlas().get("redo");
+        cup = game.getAtlas().get("cup");
+        pixel = game.getAtlas().getPixel();
+        background = game.getAssets().acquire(Assets.GAME_BACKGROUND, Texture.class);
+        backgroundMusicFile = type == GameType.DEFAULT ? Assets.GAME_MUSIC : Assets.SPEED_MUSIC;
 
         camera = new OrthographicCamera();
         camera.setToOrtho(false, PacketrisGame.GAME_WIDTH, PacketrisGame.GAME_HEIGHT);
 
-        spawnPacket();
+        settledPackets = new PacketLayer(game.getBatch(), pixel);
+        this.replay = replay;
+        seed = replay.getSeed();
+        if (speed == null) //recording
+        {
+            playback = null;
+            engine = new GameEngine(type, this, seed);
+            input = game.getAutoplayInput();
+            if (input != null)
+                input.start(engine);
+        } else
+        {
+            playback = replay.play(this, speed);
+            engine = playback.getEngine();
+            input = null;
+        }
+        advisor = playback == null && input == null ? new PlacementAdvisor(type, HINT_LOOKAHEAD) : null;
+        hints = advisor != null && game.getPersistence().getInteger(HINTS_KEY, 0) == 1;
     }
 
 
     /**
      * Main rendering loop of libgdx.
-     * All game rendering is done here, besides the initiation of all logic updates.
+     * All game rendering is done here, besides stepping the {@link GameEngine} that performs all logic updates.
      * Please see sectional comments for more details.
      *
      * @param delta auto-set by libgdx - time since last frame in seconds
@@ -125,6 +199,8 @@ public class GameScreen implements Screen
     @Override
     public void render(float delta)
     {
+        profiler.phase(Phase.INPUT);
+
         //Clear the screen
         Gdx.gl.glClearColor(0, 0, 0f, 1);
         Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
@@ -140,16 +216,137 @@ public class GameScreen implements Screen
         float dfMPercent = fadeOutForMainMenu > 0 ? (overall_time > fadeOutForMainMenu + 1 ? 0 :
                 1 - (overall_time - fadeOutForMainMenu)) : 1;
 
+        //time left before the first packet falls; never < 0 since this may cause crazy behavior
+        float initial_waiting = engine.getInitialWaiting();
 
-        //Do net let initial_waiting get < 0 since this may cause crazy behavior
-        if (initial_waiting < 0) initial_waiting = 0;
 
-        //set libgdx camera projection matrix for each rendering object
-        game.getBatch().setProjectionMatrix(camera.combined);
-        game.getRenderer().setProjectionMatrix(camera.combined);
-        game.getShapeRenderer().setProjectionMatrix(camera.combined);
+
+        Action action = Action.NONE; //the action to apply to the falling packet in this frame
+        TextureRegion pressedControl = null; //the control to draw red in this frame
+        float pressedControlX = 0;
 
 
+
+        /*
+         * Processing user input.
+         * Done before simulating and rendering, so that the whole frame can be drawn in one batch pass.
+         */
+
+        //Take the action from the input source if the round is autoplayed
+        if (input != null && !engine.isGameOver())
+        {
+            if (initial_waiting <= 0)
+                action = input.next(engine);
+        }
+        //Set touched-Variable to false if screen is not touched
+        else if (!Gdx.input.isTouched())
+            touched = false;
+        else if (playback != null && !engine.isGameOver()) //if a replay is running, switch its speed on each touch
+        {
+            if (!touched)
+                playback.setSpeed(playback.getSpeed().next());
+            touched = true;
+        } else if (!engine.isGameOver() && initial_waiting <= 0) //if screen touched, game still running and game already started
+        {
+            //get touchpos on screen
+            touchPos.set(Gdx.input.getX(), Gdx.input.getY(), 0);
+            camera.unproject(touchPos);
+
+            if (touchPos.y < BOTTOM_SPACE) //touch in control section
+            {
+                //match for pressed button
+                if (touchPos.x < CTRL_LENGTH + 40)
+                {
+                    // with !touched we do not allow the packet to move more than once per touch
+                    if (!touched) action = Action.MOVE_LEFT;
+                    //remember control to draw it red to indicate successful touch
+                    pressedControl = left_move;
+                    pressedControlX = 40;
+                } else if (touchPos.x < CTRL_LENGTH * 2 + 160)
+                {
+                    if (!touched) action = Action.ROTATE_LEFT;
+                    pressedControl = left_rotate;
+                    pressedControlX = CTRL_LENGTH + 160;
+                } else if (touchPos.x > PacketrisGame.GAME_WIDTH - CTRL_LENGTH - 40)
+                {
+                    if (!touched) action = Action.MOVE_RIGHT;
+                    pressedControl = right_move;
+                    pressedControlX = PacketrisGame.GAME_WIDTH - CTRL_LENGTH - 40;
+                } else if (touchPos.x > PacketrisGame.GAME_WIDTH - 2 * CTRL_LENGTH - 160)
+                {
+                    if (!touched) action = Action.ROTATE_RIGHT;
+                    pressedControl = right_rotate;
+                    pressedControlX = PacketrisGame.GAME_WIDTH - CTRL_LENGTH * 2 - 160;
+                }
+            } else if (!touched && touchPos.y < PacketrisGame.GAME_HEIGHT - BOTTOM_SPACE) //touch in main field
+                toggleHints();
+
+            touched = true;
+        } else if (engine.isGameOver() && fadeOutStarter == -1 && dfMPercent == 1) //if game over and nothing has been done on result screen
+        {
+            //get touch position
+            touchPos.set(Gdx.input.getX(), Gdx.input.getY(), 0);
+            camera.unproject(touchPos);
+
+            //check if replay button has been touched
+            if (touchPos.y > PacketrisGame.GAME_HEIGHT * 0.1f
+                    && touchPos.y < PacketrisGame.GAME_HEIGHT * 0.1 + redo.getRegionHeight()
+                    && touchPos.x > PacketrisGame.GAME_WIDTH / 2 - redo.getRegionWidth() / 2
+                    && touchPos.x < PacketrisGame.GAME_WIDTH / 2 - redo.getRegionWidth() / 2 + redo.getRegionWidth())
+                fadeOutStarter = result_time; //initiate fading out for replay by setting up the start time value
+        }
+
+        //start the next autoplayed round after showing the results
+        if (input != null && engine.isGameOver() && fadeOutStarter == -1 && result_time >= AUTOPLAY_RESULT_TIME)
+            fadeOutStarter = result_time;
+
+
+
+        /*
+         * Section for simulating the game.
+         * The engine consumes the time of each frame in fixed ticks, so the game plays the same way
+         * at any frame rate and after frame hitches. Rendering interpolates between the last two ticks.
+         * Landings and game over are reported back to packetPlaced and gameOver, which render into the
+         * settled packets layer - so this has to happen before the batch pass starts.
+         * A replay applies the recorded actions at their ticks instead, possibly simulating many ticks per frame.
+         */
+        profiler.phase(Phase.SIMULATION);
+        boolean running = !engine.isGameOver();
+        //If game running and not over
+        if (running && playback != null)
+            playback.advance(delta);
+        else if (running)
+        {
+            replay.record(engine.getTicks(), action);
+            engine.step(action, delta);
+
+            //search the hint again for every new packet, whenever the player moved it and whenever it has fallen
+            //by half a block, since that can put a placement out of reach; without waiting for the search
+            if (hints && !engine.isGameOver() && (action != Action.NONE || engine.getPlacedPackets() != hintPackets
+                    || Reachability.level(engine.getCurrentPacket().getPosY()) != hintLevel))
+            {
+                advisor.request(engine.getGrid(), engine.getCurrentPacket());
+                hintPackets = engine.getPlacedPackets();
+                hintLevel = Reachability.level(engine.getCurrentPacket().getPosY());
+            }
+        }
+
+
+
+        /*
+         * Rendering. Everything except the background and the settled packets layer is drawn from the UI atlas,
+         * so the whole frame is a single batch pass with three draw calls and no blending toggles.
+         */
+
+        profiler.phase(Phase.PACKETS);
+
+        //opacity of the packets, see below for an explanation of this pattern
+        float packetOpacity = dfMPercent * (fadeOutStarter > 0 ? (fadeOutStarter - result_time + 1 < 0 ? 0 :
+                fadeOutStarter - result_time + 1) : 1);
+
+        //set libgdx camera projection matrix
+        game.getBatch().setProjectionMatrix(camera.combined);
+
         game.getBatch().begin(); //start the SpriteBatch. Renderings will be flushed to OpenGL by .end() later
         /*
          * Opacity: dfMPercent * (restarted ? 1 : (1 - Math.max(0, initial_waiting) / 2))
@@ -163,6 +360,11 @@ public class GameScreen implements Screen
         //Draw background image
         game.getBatch().draw(background, 0, 0, PacketrisGame.GAME_WIDTH, PacketrisGame.GAME_HEIGHT);
 
+        //Draw all settled packets at once - they are rendered into the layer when they land. See PacketLayer class
+        settledPackets.draw(packetOpacity);
+
+        profiler.phase(Phase.HUD);
+
         /*
          * Drawing controls.
          * y: (i.e) restarted ? 40 : (initial_waiting > 1.5f ? -CTRL_LENGTH :
@@ -172,6 +374,8 @@ public class GameScreen implements Screen
          * Easing.easeIn(1.5f - initial_waiting, -CTRL_LENGTH, CTRL_LENGTH + 40, 1)
          * After waiting time: EaseIn vertically in 1 second
          */
+        game.getBatch().setColor(1, 1, 1,
+                dfMPercent * (restarted ? 1 : (1 - Math.max(0, initial_waiting) / 2)));
         game.getBatch().draw(left_move, 40, restarted ? 40 : (initial_waiting > 1.5f ? -CTRL_LENGTH :
                         Easing.easeIn(1.5f - initial_waiting, -CTRL_LENGTH, CTRL_LENGTH + 40, 1)),
                 CTRL_LENGTH, CTRL_LENGTH);
@@ -182,17 +386,6 @@ public class GameScreen implements Screen
         game.getBatch().draw(right_move, PacketrisGame.GAME_WIDTH - CTRL_LENGTH - 40, restarted ? 40 : (initial_waiting > 1.5f ? -CTRL_LENGTH :
                 Easing.easeIn(1.5f - initial_waiting, -CTRL_LENGTH, CTRL_LENGTH + 40, 1)), CTRL_LENGTH, CTRL_LENGTH);
 
-        //close batch while drawing using the renderers since leaving it open may cause drawn shapes to hide
-        game.getBatch().end();
-
-        //Enable blending (using opacity)
-        Gdx.gl.glEnable(GL20.GL_BLEND);
-        Gdx.gl.glBlendFunc(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
-
-        //set up both the Line-Renderer and the Filled Shape renderer
-        game.getRenderer().begin(ShapeRenderer.ShapeType.Line);
-        game.getShapeRenderer().begin(ShapeRenderer.ShapeType.Filled);
-
         /*
          * Opacity: dfMPercent * (fadeOutStarter > 0 ? (fadeOutStarter - result_time + 1 < 0 ? 0 :
          *          Fading out for main menu factor
@@ -204,94 +397,36 @@ public class GameScreen implements Screen
          *
          *  When reading the code, remember this structure as it will appear multiple times.
          */
-        game.getRenderer().setColor(0, 0, 0,
+        game.getBatch().setColor(0, 0, 0,
                 dfMPercent * (fadeOutStarter > 0 ? (fadeOutStarter - result_time + 1 < 0 ? 0 :
                         fadeOutStarter - result_time + 1) : 1));
 
-        //Draw rectangle around main field to show why the last packet does not fit
-        game.getRenderer().rect(SIDE_SPACE, BOTTOM_SPACE, PacketrisGame.GAME_WIDTH - 2 * SIDE_SPACE, PacketrisGame.GAME_HEIGHT - BOTTOM_SPACE * 2);
-
-        //Set cardboard color, then tell each packet to render itself. See Packet class
-        game.getShapeRenderer().setColor(new Color(0.80f, 0.52f, 0.25f,
-                dfMPercent * (fadeOutStarter > 0 ? (fadeOutStarter - result_time + 1 < 0 ? 0 : fadeOutStarter - result_time + 1) : 1)));
-        for (int i = 0; i < packets.size; ++i)
-            packets.get(i).render(game.getRenderer(), game.getShapeRenderer(), dfMPercent * (
-                    fadeOutStarter > 0 ? (fadeOutStarter - result_time + 1 < 0 ? 0 : fadeOutStarter - result_time + 1) : 1));
-        //Flush rendererd packets to OpenGL
-        game.getShapeRenderer().end();
-        game.getRenderer().end();
-        //Disable blending before reenabling the SpriteBatch
-        Gdx.gl.glDisable(GL20.GL_BLEND);
-
-        game.getBatch().begin();
-
-        //Tell Texts to render - see MovingText Class
-        for (MovingText t : texts)
-            t.render(game.getBatch(), game.getIngameFont(), dfMPercent);
-
+        profiler.phase(Phase.PACKETS);
 
+        //Draw rectangle around main field to show why the last packet does not fit
+        BatchShapes.outline(game.getBatch(), pixel, SIDE_SPACE, BOTTOM_SPACE, PacketrisGame.GAME_WIDTH - 2 * SIDE_SPACE, PacketrisGame.GAME_HEIGHT - BOTTOM_SPACE * 2);
 
-        //Spawn new Packet if necessary
-        if (dospawn && !packets.get(packets.size - 1).isMoving())
-            spawnPacket();
-        Packet p = packets.get(packets.size - 1);
+        //Render the hint below the falling packet, if the background search has already found one
+        PlacementSearch.Placement hint = hints && !engine.isGameOver() ? advisor.getHint() : null;
+        if (hint != null)
+            PacketRenderer.renderGhost(hint.getShape(), hint.getColumn(), hint.getRow(), game.getBatch(), pixel, packetOpacity);
 
+        //Render the falling packet, interpolated between the last two simulation ticks.
+        //After game over, the red packet is part of the settled packets layer
+        if (!engine.isGameOver())
+            PacketRenderer.render(engine.getCurrentPacket(), game.getBatch(), pixel, packetOpacity, engine.getAlpha());
 
+        profiler.phase(Phase.HUD);
 
-        /*
-         * Processing user input.
-         */
+        //Tell Texts to render - see MovingText Class
+        for (int i = 0; i < texts.size; ++i)
+            texts.get(i).render(game.getBatch(), game.getIngameFont(), dfMPercent);
 
-        //Set touched-Variable to false if screen is not touched
-        if (!Gdx.input.isTouched())
-            touched = false;
-        else if (dospawn && initial_waiting <= 0) //if screen touched, game still running and game already started
+        //draw pressed control red
+        if (pressedControl != null)
         {
             game.getBatch().setColor(1, 0, 0, dfMPercent); //respect fading out for main menu
-
-            //get touchpos on screen
-            Vector3 touchPos = new Vector3();
-            touchPos.set(Gdx.input.getX(), Gdx.input.getY(), 0);
-            camera.unproject(touchPos);
-
-            if (touchPos.y < BOTTOM_SPACE) //touch in control section
-            {
-                //match for pressed button
-                if (touchPos.x < CTRL_LENGTH + 40)
-                {
-                    // with !touched we do not allow the packet to move more than once per touch
-                    if (!touched) p.setCheckedPosX(p.getPosX() - 1, packets);
-                    //draw control red to indicate successful touch
-                    game.getBatch().draw(left_move, 40, 40, CTRL_LENGTH, CTRL_LENGTH);
-                } else if (touchPos.x < CTRL_LENGTH * 2 + 160)
-                {
-                    if (!touched) p.rotate(false, packets);
-                    game.getBatch().draw(left_rotate, CTRL_LENGTH + 160, 40, CTRL_LENGTH, CTRL_LENGTH);
-                } else if (touchPos.x > PacketrisGame.GAME_WIDTH - CTRL_LENGTH - 40)
-                {
-                    if (!touched) p.setCheckedPosX(p.getPosX() + 1, packets);
-                    game.getBatch().draw(right_move, PacketrisGame.GAME_WIDTH - CTRL_LENGTH - 40, 40, CTRL_LENGTH, CTRL_LENGTH);
-                } else if (touchPos.x > PacketrisGame.GAME_WIDTH - 2 * CTRL_LENGTH - 160)
-                {
-                    if (!touched) p.rotate(true, packets);
-                    game.getBatch().draw(right_rotate, PacketrisGame.GAME_WIDTH - CTRL_LENGTH * 2 - 160, 40, CTRL_LENGTH, CTRL_LENGTH);
-                }
-            }
-
-            touched = true;
-        } else if (!dospawn && fadeOutStarter == -1 && dfMPercent == 1) //if game over and nothing has been done on result screen
-        {
-            //get touch position
-            Vector3 touchPos = new Vector3();
-            touchPos.set(Gdx.input.getX(), Gdx.input.getY(), 0);
-            camera.unproject(touchPos);
-
-            //check if replay button has been touched
-            if (touchPos.y > PacketrisGame.GAME_HEIGHT * 0.1f
-                    && touchPos.y < PacketrisGame.GAME_HEIGHT * 0.1 + redo.getHeight()
-                    && touchPos.x > PacketrisGame.GAME_WIDTH / 2 - redo.getWidth() / 2
-                    && touchPos.x < PacketrisGame.GAME_WIDTH / 2 - redo.getWidth() / 2 + redo.getWidth())
-                fadeOutStarter = result_time; //initiate fading out for replay by setting up the start time value
+            game.getBatch().draw(pressedControl, pressedControlX, 40, CTRL_LENGTH, CTRL_LENGTH);
         }
 
         //see line for an explanation of the opacity pattern
@@ -299,92 +434,25 @@ public class GameScreen implements Screen
 
         //render score text on near top screen edge
         //str: counting down score value back to zero while fading out for replay to avoid a hard cut to zero at replay
-        game.getIngameFont().draw(game.getBatch(), "Score: " +
-                        (fadeOutStarter > 0 ? (fadeOutStarter - result_time + 1 < 0 ? 0 :
-                                Math.max(0, (int) Math.round((fadeOutStarter - result_time + 1) * fullScore * 1D) - 300)) : fullScore), 40,
+        game.getIngameFont().draw(game.getBatch(), scoreText("Score: ",
+                        fadeOutStarter > 0 ? (fadeOutStarter - result_time + 1 < 0 ? 0 :
+                                Math.max(0, (int) Math.round((fadeOutStarter - result_time + 1) * engine.getScore() * 1D) - 300)) : engine.getScore()), 40,
                 PacketrisGame.GAME_HEIGHT - 80);
 
-        //Flush batch to oGL
-        game.getBatch().end();
-
-
-        /*
-         * Section for checking packet hitboxes
-         */
-        //If game running and not over
-        if (dospawn)
-        {
-            //Calculate height difference from last frame
-            int d = Math.round(type.getSpeed() * Gdx.graphics.getDeltaTime());
-
-            //move packet if initial_waiting is over; p has been assigned at beginning of method
-            p.setPosY(p.getPosY() - ((initial_waiting -= delta) > 0 ? 0 : d));
-            if (p.getPosY() < BOTTOM_SPACE + 1) //if packet hits the ground. Note that it may also hit other packets at the same time
-            {
-                //add points.  bonus point determined by summing up bottom line of packet (ground line) + overlays of any other packets
-                handleNewPoints(p.setMoving(false) + (p.bottomLine() + calculateOverlaysOf(p)) * 10, p);
-                p.setPosY(BOTTOM_SPACE);
-            } else //if packet hits not the ground
-            {
-                //Check if it hits any of the other packets
-                int n = calculateOverlaysOf(p);
-                if (n > 0) //hits other packet
-                {
-                    //correct position if necessary
-                    int realH = (p.getPosY() - BOTTOM_SPACE + d) -
-                            //using modulo to get exact height of the line of the game grid where
-                            //the packet should be placed
-                            (p.getPosY() - BOTTOM_SPACE + d) % Packet.BLOCK_SIDE_LENGTH
-                            + BOTTOM_SPACE;
-                    p.setPosY(realH);
-
-                    //if packet does not fit into the field
-                    if (realH + p.getHeight() > PacketrisGame.GAME_HEIGHT - BOTTOM_SPACE)
-                    {
-                        hitSound.play();
-                        dospawn = false; //set game over - stop spawning new packets
-
-                        if (fullScore > best) //check highscore
-                        {
-                            best = fullScore;
-                            newbest = true;
-                            save.putInteger("score" + type.toString(), best);
-                            save.flush(); //save new highscore
-                        }
-
-                        p.setRed(); //mark not fitting packet red
-                        backgroundMusic.stop();
-                        gameOver.play(); //play failure sound
-                        afterGameMusic.play();
-                    } else //if packet fits into field, stop moving the packet and add points to score
-                        //100 points per block + 10 per downwards touching surface
-                        handleNewPoints(p.setMoving(false) + n * 10, p);
-                } //if p hits no other packet do nothing
-            }
-        }
-
 
 
         /*
          * GAME OVER - RENDERING RESULTS
         */
-        else //if game over
+        if (!running) //if game over
         {
-            //Grey out main field to highlight result information, respecting any fading
-            Gdx.gl.glEnable(GL20.GL_BLEND);
-            Gdx.gl.glBlendFunc(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
-            game.getRenderer().begin(ShapeRenderer.ShapeType.Filled);
+            profiler.phase(Phase.RESULTS);
 
-            game.getRenderer().setColor(0, 0, 0,
+            //Grey out main field to highlight result information, respecting any fading
+            game.getBatch().setColor(0, 0, 0,
                     dfMPercent * (fadeOutStarter > 0 ? (fadeOutStarter - result_time + 1 < 0 ? 0 : (fadeOutStarter - result_time + 1) * 0.8f) : (
                             result_time < 1 ? result_time * 0.8f : 0.8f)));
-            game.getRenderer().rect(0, 0, PacketrisGame.GAME_WIDTH, PacketrisGame.GAME_HEIGHT);
-            game.getRenderer().end();
-
-            Gdx.gl.glDisable(GL20.GL_BLEND);
-
-
-            game.getBatch().begin();
+            BatchShapes.rect(game.getBatch(), pixel, 0, 0, PacketrisGame.GAME_WIDTH, PacketrisGame.GAME_HEIGHT);
 
             //render game over text 1 second after game over
             if (result_time >= 1)
@@ -404,9 +472,8 @@ public class GameScreen implements Screen
                 float scale = internal_time > 1 ? 1 : Easing.easeIn(internal_time, 2, -1, 1);
                 game.getBatch().setColor(1, 1, 1,
                         dfMPercent * (fadeOutStarter > 0 ? (fadeOutStarter - result_time + 1 < 0 ? 0 : fadeOutStarter - result_time + 1) : (internal_time > 1 ? 1 : internal_time)));
-                game.getBatch().draw(cup, PacketrisGame.GAME_WIDTH / 2 - cup.getWidth() / 2, PacketrisGame.GAME_HEIGHT * 0.3f,
-                        cup.getWidth() / 2, redo.getHeight() / 2, cup.getWidth(), cup.getHeight(), scale, scale, 1, 0, 0,
-                        cup.getWidth(), cup.getHeight(), false, false);
+                game.getBatch().draw(cup, PacketrisGame.GAME_WIDTH / 2 - cup.getRegionWidth() / 2, PacketrisGame.GAME_HEIGHT * 0.3f,
+                        cup.getRegionWidth() / 2, redo.getRegionHeight() / 2, cup.getRegionWidth(), cup.getRegionHeight(), scale, scale, 1);
             }
 
             //render own score
@@ -415,8 +482,8 @@ public class GameScreen implements Screen
                 float internal_time = result_time - 1.5f;
                 game.getIngameFont().setColor(1, 1, 1, dfMPercent * (fadeOutStarter > 0 ? (fadeOutStarter - result_time + 1 < 0 ? 0 : fadeOutStarter - result_time + 1) : (
                         Easing.easeIn(internal_time, 0, 1, 1))));
-                glyphLayout.setText(game.getIngameFont(), "Score: " + fullScore);
-                game.getIngameFont().draw(game.getBatch(), "Score: " + fullScore, PacketrisGame.GAME_WIDTH / 2 - glyphLayout.width / 2,
+                glyphLayout.setText(game.getIngameFont(), scoreText("Score: ", engine.getScore()));
+                game.getIngameFont().draw(game.getBatch(), scoreText, PacketrisGame.GAME_WIDTH / 2 - glyphLayout.width / 2,
                         Easing.easeIn(internal_time, PacketrisGame.GAME_HEIGHT * 0.7f - 100, 100, 1));
             }
 
@@ -429,13 +496,68 @@ public class GameScreen implements Screen
                         dfMPercent * (fadeOutStarter > 0 ? (fadeOutStarter - result_time + 1 < 0 ? 0 : fadeOutStarter - result_time + 1) : (
                                 Easing.easeIn(internal_time, 0, 1, 1))));
                 game.getIngameFont().getData().setScale(newbest ? 1.5f : 1); //scale up best score if new highscore
-                glyphLayout.setText(game.getIngameFont(), "Best: " + best);
-                game.getIngameFont().draw(game.getBatch(), "Best: " + best, PacketrisGame.GAME_WIDTH / 2 - glyphLayout.width / 2,
+                glyphLayout.setText(game.getIngameFont(), scoreText("Best: ", best));
+                game.getIngameFont().draw(game.getBatch(), scoreText, PacketrisGame.GAME_WIDTH / 2 - glyphLayout.width / 2,
                         Easing.easeIn(internal_time, newbest ? PacketrisGame.GAME_HEIGHT * 0.6f - 100 : PacketrisGame.GAME_HEIGHT * 0.52f - 100,
                                 100, 1));
                 game.getIngameFont().getData().setScale(1);
             }
 
+            //render rank among all rounds of this type
+            if (result_time >= 2.5f)
+            {
+                float internal_time = result_time - 2.5f;
+                game.getIngameFont().setColor(1, 1, 1, dfMPercent * (fadeOutStarter > 0 ? (fadeOutStarter - result_time + 1 < 0 ? 0 : fadeOutStarter - result_time + 1) : (
+                        Easing.easeIn(internal_time, 0, 1, 1))));
+                game.getIngameFont().getData().setScale(0.75f);
+                glyphLayout.setText(game.getIngameFont(), rankText);
+                game.getIngameFont().draw(game.getBatch(), rankText, PacketrisGame.GAME_WIDTH / 2 - glyphLayout.width / 2,
+                        Easing.easeIn(internal_time, newbest ? PacketrisGame.GAME_HEIGHT * 0.52f - 100 : PacketrisGame.GAME_HEIGHT * 0.46f - 100,
+                                100, 1));
+                game.getIngameFont().getData().setScale(1);
+            }
+
+            //render the best rounds of this type in two columns, where the cup is shown for a new highscore
+            if (!newbest && result_time >= 3.5f && topText[0].length() > 0)
+            {
+                float internal_time = result_time - 3.5f;
+                game.getIngameFont().setColor(1, 1, 1, dfMPercent * (fadeOutStarter > 0 ? (fadeOutStarter - result_time + 1 < 0 ? 0 : fadeOutStarter - result_time + 1) : (
+                        Easing.easeIn(internal_time, 0, 1, 1))));
+                game.getIngameFont().getData().setScale(0.5f);
+                for (int i = 0; i < topText.length; ++i)
+                    game.getIngameFont().draw(game.getBatch(), topText[i], PacketrisGame.GAME_WIDTH * (0.25f + 0.3f * i),
+                            Easing.easeIn(internal_time, PacketrisGame.GAME_HEIGHT * 0.38f - 100, 100, 1));
+                game.getIngameFont().getData().setScale(1);
+            }
+
+            //render the score in percent of the best one found for the same packets, once it has been searched
+            if (optimum != null && optimum.isCompletedAbnormally())
+            {
+                if (!optimum.isCancelled())
+                    Gdx.app.error("Solver", "Could not search the best score", optimum.getException());
+                optimum = null; //the efficiency is not shown
+            }
+            if (result_time >= 3.0f && optimum != null && optimum.isCompletedNormally())
+            {
+                if (efficiencyText.length() == 0)
+                {
+                    //the best score found is a lower bound, so a round beating it is the best one
+                    efficiencyText.append("Efficiency ")
+                            .append(Math.round(optimum.getRawResult().getEfficiency(engine.getScore())))
+                            .append("% of ").append(Math.max(optimum.getRawResult().getScore(), engine.getScore()));
+                    optimumTime = result_time;
+                }
+                float internal_time = result_time - optimumTime;
+                game.getIngameFont().setColor(1, 1, 1, dfMPercent * (fadeOutStarter > 0 ? (fadeOutStarter - result_time + 1 < 0 ? 0 : fadeOutStarter - result_time + 1) : (
+                        Easing.easeIn(internal_time, 0, 1, 1))));
+                game.getIngameFont().getData().setScale(0.75f);
+                glyphLayout.setText(game.getIngameFont(), efficiencyText);
+                game.getIngameFont().draw(game.getBatch(), efficiencyText, PacketrisGame.GAME_WIDTH / 2 - glyphLayout.width / 2,
+                        Easing.easeIn(internal_time, newbest ? PacketrisGame.GAME_HEIGHT * 0.48f - 100 : PacketrisGame.GAME_HEIGHT * 0.42f - 100,
+                                100, 1));
+                game.getIngameFont().getData().setScale(1);
+            }
+
             //display big "NEW HIGHSCORE" if it was a new highscore
             if (newbest && result_time >= 3.0f)
             {
@@ -457,21 +579,23 @@ public class GameScreen implements Screen
                 float scale = result_time < 4 ? 0.8f : Easing.easeInOutRepeated(internal_time, 0.8f, 0.2f, 2);
                 game.getBatch().setColor(1, 1, 1, dfMPercent * (fadeOutStarter > 0 ? (fadeOutStarter - result_time + 1 < 0 ? 0 : fadeOutStarter - result_time + 1) : (
                         Easing.easeIn(internal_time, 0, 1, 1))));
-                game.getBatch().draw(redo, PacketrisGame.GAME_WIDTH / 2 - redo.getWidth() / 2,
+                game.getBatch().draw(redo, PacketrisGame.GAME_WIDTH / 2 - redo.getRegionWidth() / 2,
                         Easing.easeIn(internal_time, PacketrisGame.GAME_HEIGHT * 0.1f - 100, 100, 1),
-                        redo.getWidth() / 2, redo.getHeight() / 2, redo.getWidth(), redo.getHeight(),
-                        scale, scale, 1, 0, 0, redo.getWidth(), redo.getHeight(), false, false);
+                        redo.getRegionWidth() / 2, redo.getRegionHeight() / 2, redo.getRegionWidth(), redo.getRegionHeight(),
+                        scale, scale, 1);
             }
 
             result_time += delta; //count up current delta to time since game over
-            game.getBatch().end();
         }
 
-        //Delete inactive moving texts
-        Iterator<MovingText> iter = texts.iterator();
-        while (iter.hasNext())
-            if (!iter.next().isActive())
-                iter.remove();
+        //Flush batch to oGL
+        profiler.phase(Phase.FLUSH);
+        game.getBatch().end();
+
+        //Delete inactive moving texts and give them back to the pool
+        for (int i = texts.size - 1; i >= 0; --i)
+            if (!texts.get(i).isActive())
+                textPool.free(texts.removeIndex(i));
 
         //Check if fading out for main menu is complete; if yes, set current screen to a main menu instance
         if (dfMPercent <= 0)
@@ -487,7 +611,8 @@ public class GameScreen implements Screen
 
         if (fadeOutStarter > 0 && fadeOutStarter - result_time + 1 <= 0)
         {
-            game.setScreen(new GameScreen(game, type, true));
+            game.setScreen(playback != null ? new GameScreen(game, replay, playback.getSpeed(), true)
+                    : new GameScreen(game, type, true));
             dispose();
         }
 
@@ -496,69 +621,139 @@ public class GameScreen implements Screen
     }
 
     /**
-     * Calculates the amount of blocks touching the ground and/or other packets downwards
-     *
-     * @param p The packet whose touches should be counted
-     * @return the amount of touches
+     * Switches the hint on or off and remembers the choice for the next rounds.
      */
-    private int calculateOverlaysOf(Packet p)
+    private void toggleHints()
     {
-        int n = 0;
-        for (Packet p2 : packets)
-            if (p2 != p)
-                n += p.overlapsCount(p2, true);
-        return n;
+        hints = !hints;
+        if (!hints)
+            advisor.cancel();
+        hintPackets = -1; //requested in this frame if switched on
+        game.getPersistence().putInteger(HINTS_KEY, hints ? 1 : 0);
+        game.getPersistence().flush(); //saved in the background
     }
 
     /**
-     * Spawn a new packet by adding a new random packet to the packets list.
-     * Respects the game type when it comes to packet generation.
-     * Sets up the new packet to fall down at a random position
+     * Builds a text consisting of a label and a value in {@link #scoreText} without allocating memory.
+     * The text is valid until the next call.
+     *
+     * @param label the label, e.g. "Score: "
+     * @param value the value to append
+     * @return the text
      */
-    private void spawnPacket()
+    private CharSequence scoreText(String label, int value)
     {
-        int n = MathUtils.random(1, 3);
-        int x = (int) Math.pow(2, n);
-        int y = 16 / x;
-
-
-        Packet p = Packet.random(x, y, type == GameType.SPEED);
-        p.setPosX(MathUtils.random(0, ((PacketrisGame.GAME_WIDTH - SIDE_SPACE) / Packet.BLOCK_SIDE_LENGTH)
-                - 1 - p.getWidth() / Packet.BLOCK_SIDE_LENGTH));
-        p.setPosY(PacketrisGame.GAME_HEIGHT);
-        packets.add(p);
+        scoreText.setLength(0);
+        scoreText.append(label).append(value);
+        return scoreText;
     }
 
     /**
-     * Adds new points to the full score counter, play the hit sound and adds a moving text indicating
-     * how much points were earned.
+     * Plays the hit sound, renders the packet into the settled packets layer and adds a moving text
+     * indicating how much points were earned.
      *
-     * @param points The amount of points earned
      * @param p the packet that caused the earnings
+     * @param points The amount of points earned
      */
-    private void handleNewPoints(int points, Packet p)
+    @Override
+    public void packetPlaced(Packet p, int points)
     {
-        hitSound.play(0.7f);
-        fullScore += points;
-        texts.add(new MovingText("" + points, Math.round(p.getPosXInPixels() + p.getWidth() * 0.25f),
-                Math.round(p.getPosY() + p.getHeight() * 0.75f)));
+        game.getAudio().play(AudioDirector.Effect.HIT, 0.7f);
+        settledPackets.add(p);
+        MovingText text = textPool.obtain();
+        text.set(points, Math.round(p.getPosXInPixels() + p.getWidth() * 0.25f),
+                Math.round(p.getPosY() + p.getHeight() * 0.75f));
+        texts.add(text);
+    }
+
+    /**
+     * Renders the red packet into the settled packets layer, saves a new highscore, the round and its replay
+     * and switches from the game music to the result music. A replay being played is only checked against the
+     * recorded result.
+     *
+     * @param p the packet that did not fit into the main field
+     */
+    @Override
+    public void gameOver(Packet p)
+    {
+        game.getAudio().play(AudioDirector.Effect.HIT, 1);
+        settledPackets.add(p); //the packet is red now
+        game.getAudio().play(AudioDirector.Effect.GAME_OVER, 1); //play failure sound
+        //the result music is the one of the main menu, so it keeps playing when returning to the menu
+        game.getAudio().playMusic(Assets.MENU_MUSIC, 0.5f, false);
+        if (advisor != null)
+            advisor.cancel();
+        //the packets only depend on the seed, so the best score for them can be searched while the results show up;
+        //not worth it for replays and autoplayed rounds, which nobody rates
+        if (playback == null && input == null)
+            optimum = BackgroundPool.get().submit(new Callable<PackingSolver.Result>()
+            {
+                @Override
+                public PackingSolver.Result call()
+                {
+                    return new PackingSolver(PackingSolver.DEFAULT_BEAM_WIDTH, BackgroundPool.get()).solve(type, seed);
+                }
+            });
+
+        if (playback != null)
+        {
+            if (playback.isDiverged())
+            {
+                rankText.append("Replay diverged: recorded ").append(replay.getScore());
+                Gdx.app.error("Replay", "Diverged from the recording: score " + engine.getScore() + " instead of "
+                        + replay.getScore() + ", ticks " + engine.getTicks() + " instead of " + replay.getTicks());
+            } else
+                rankText.append("Replay of a recorded round");
+            return;
+        }
+
+        replay.end(engine);
+        game.getReplays().save(replay);
+
+        if (engine.getScore() > best) //check highscore
+        {
+            best = engine.getScore();
+            newbest = true;
+            game.getPersistence().putInteger("score" + type.toString(), best);
+            game.getPersistence().flush(); //saved in the background
+        }
+
+        ScoreHistory history = game.getScoreHistory();
+        history.add(new ScoreHistory.Round(engine.getScore(), type, engine.getPlacedPackets(), engine.getFillRatio(),
+                engine.getTicks(), seed));
+        int rank = history.getRank(type, engine.getScore());
+        int count = history.getCount(type);
+        rankText.append("Rank ").append(rank).append(" of ").append(count)
+                .append(", better than ").append((int) history.getPercentile(type, engine.getScore())).append('%');
+        Array<ScoreHistory.Round> top = history.getTop(type);
+        int rows = (ScoreHistory.TOP_ROUNDS + 1) / 2;
+        for (int i = 0; i < top.size; ++i)
+        {
+            StringBuilder column = topText[i / rows];
+            if (column.length() > 0)
+                column.append('\n');
+            column.append(i + 1).append(". ").append(top.get(i).getScore());
+        }
     }
 
 
     @Override
     public void resize(int width, int height)
     {
+        if (settledPackets.resize(width, height))
+            settledPackets.rebuild(engine.getPackets());
     }
 
     @Override
     public void show()
     {
-        backgroundMusic.play();
+        game.getAudio().playMusic(backgroundMusicFile, type == GameType.SPEED ? 0.25f : 0.4f, true);
     }
 
     @Override
     public void hide()
     {
+        //the music is changed by the next screen
     }
 
     @Override
@@ -569,22 +764,19 @@ public class GameScreen implements Screen
     @Override
     public void resume()
     {
+        //the content of the layer is lost if the OpenGL context has been recreated
+        settledPackets.rebuild(engine.getPackets());
     }
 
     @Override
     public void dispose()
     {
-        right_move.dispose();
-        left_move.dispose();
-        right_rotate.dispose();
-        left_rotate.dispose();
-        background.dispose();
-        hitSound.dispose();
-        backgroundMusic.dispose();
-        afterGameMusic.dispose();
-        gameOver.dispose();
-        redo.dispose();
-        cup.dispose();
+        game.getAssets().release(Assets.GAME_BACKGROUND);
+        settledPackets.dispose();
+        if (advisor != null)
+            advisor.dispose();
+        if (optimum != null)
+            optimum.cancel(false); //the result is not shown anymore
     }
 
 }
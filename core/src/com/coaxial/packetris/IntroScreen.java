@@ -8,8 +8,10 @@ import com.badlogic.gdx.graphics.g2d.GlyphLayout;
 import com.coaxial.packetris.util.Easing;
 
 /**
- * A simple intro screen blending in "by COAXIAL" for a short time.
+ * A simple intro screen blending in "by COAXIAL" for a short time, while all assets are loaded in the background.
  * After that, it sets the current screen of the {@link PacketrisGame} instance to a new {@link MainMenuScreen}.
+ *
+ * @see Assets
  */
 
 public class IntroScreen implements Screen
@@ -43,6 +45,9 @@ public class IntroScreen implements Screen
         camera.update();
         game.getBatch().setProjectionMatrix(camera.combined);
 
+        //the texts need the fonts, so the intro starts when they are ready
+        if (!game.getAssets().isUiReady())
+            return;
         time += delta; //count up time
 
         game.getBatch().begin();
@@ -68,10 +73,10 @@ public class IntroScreen implements Screen
                     Easing.easeIn(internalTime, PacketrisGame.GAME_HEIGHT * 0.5f - layout.height - 100, 100, 1));
         }
 
-        //After all texts have faded out, switch to the main menu screen
-        if(time >= 4.5f)
+        //After all texts have faded out and all assets are loaded, switch to the main menu screen (or a replay)
+        if(time >= 4.5f && game.getAssets().isFinished())
         {
-            game.setScreen(new MainMenuScreen(game, false));
+            game.setScreen(game.createStartScreen());
             dispose();
         }
 
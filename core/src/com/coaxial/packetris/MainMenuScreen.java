@@ -3,11 +3,11 @@ package com.coaxial.packetris;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input;
 import com.badlogic.gdx.Screen;
-import com.badlogic.gdx.audio.Music;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.Vector3;
 import com.coaxial.packetris.util.Easing;
 
@@ -20,12 +20,11 @@ public class MainMenuScreen implements Screen
 {
     private final PacketrisGame game;
     private OrthographicCamera camera;
-    private Texture title;
-    private Texture standardbutton;
-    private Texture speedButton;
+    private TextureRegion title; //from the UI atlas
+    private TextureRegion standardbutton;
+    private TextureRegion speedButton;
     private Texture background;
-    private Music backgroundMusic;
-
+    private final Vector3 touchPos = new Vector3(); //reused for unprojecting touch positions
 
     private float time = 0;
     private float fadeOutStart = 0; //start time for disposing to a new GameScreen
@@ -33,7 +32,7 @@ public class MainMenuScreen implements Screen
     private int lastButton = -1; //indicates the last pressed button. 0=STANDARD, 1=SPEED
 
     /**
-     * Creates a new instance, loads resources.
+     * Creates a new instance, takes the resources from the asset cache.
      *
      * @param gam                  The main {@link PacketrisGame} instance.
      * @param doNotExitImmediately set to true if you want the back button to be released once before exiting; false otherwise
@@ -46,14 +45,10 @@ public class MainMenuScreen implements Screen
         camera = new OrthographicCamera();
         camera.setToOrtho(false, PacketrisGame.GAME_WIDTH, PacketrisGame.GAME_HEIGHT);
 
-        backgroundMusic = Gdx.audio.newMusic(Gdx.files.internal("main_menu_bg.mp3"));
-        title = new Texture(Gdx.files.internal("title.png"));
-        standardbutton = new Texture(Gdx.files.internal("standardbutton.png"));
-        speedButton = new Texture(Gdx.files.internal("speedbutton.png"));
-        background = new Texture(Gdx.files.internal("raw_bg.png"));
-
-        backgroundMusic.setLooping(true);
-        backgroundMusic.setVolume(0.5f);
+        title = game.getAtlas().get("title");
+        standardbutton = game.getAtlas().get("standardbutton");
+        speedButton = game.getAtlas().get("speedbutton");
+        background = game.getAssets().acquire(Assets.MENU_BACKGROUND, Texture.class);
     }
 
 
@@ -89,10 +84,10 @@ public class MainMenuScreen implements Screen
             game.getBatch().setColor(1, 1, 1, internalTime > 1 ? 1 : internalTime); //Opacity: fade in for 1s
             game.getBatch().draw(title,
                     PacketrisGame.GAME_WIDTH * 0.125f - Easing.easeOut(fadeOutPercent, 0, //Respect disposing
-                            -PacketrisGame.GAME_WIDTH * 0.125f - title.getWidth(), 1),
+                            -PacketrisGame.GAME_WIDTH * 0.125f - title.getRegionWidth(), 1),
                     //Ease in vertically for 1 second
                     Easing.easeIn(internalTime, PacketrisGame.GAME_HEIGHT * 0.8f - 100, 100, 1),
-                    PacketrisGame.GAME_WIDTH * 0.75f, (PacketrisGame.GAME_WIDTH * 0.75f) / title.getWidth() * title.getHeight());
+                    PacketrisGame.GAME_WIDTH * 0.75f, (PacketrisGame.GAME_WIDTH * 0.75f) / title.getRegionWidth() * title.getRegionHeight());
         }
 
         //After 2 seconds, ease in the first button (STANDARD)
@@ -105,10 +100,10 @@ public class MainMenuScreen implements Screen
                 game.getBatch().setColor(1, 1, 1, internalTime > 1 ? 1 : internalTime); //Opacity: fade in for 1s
             game.getBatch().draw(standardbutton,
                     PacketrisGame.GAME_WIDTH * 0.125f - Easing.easeOut(fadeOutPercent, 0, //Respect disposing
-                            -PacketrisGame.GAME_WIDTH * 0.125f - standardbutton.getWidth(), 1),
+                            -PacketrisGame.GAME_WIDTH * 0.125f - standardbutton.getRegionWidth(), 1),
                     //Ease in vertically for 1 seconds
                     Easing.easeIn(internalTime, PacketrisGame.GAME_HEIGHT * 0.5f - 100, 100, 1),
-                    PacketrisGame.GAME_WIDTH * 0.75f, (PacketrisGame.GAME_WIDTH * 0.75f) / standardbutton.getWidth() * standardbutton.getHeight());
+                    PacketrisGame.GAME_WIDTH * 0.75f, (PacketrisGame.GAME_WIDTH * 0.75f) / standardbutton.getRegionWidth() * standardbutton.getRegionHeight());
         }
 
         //After 2.3 seconds, ease in the second button (SPEED)
@@ -121,11 +116,11 @@ public class MainMenuScreen implements Screen
                 game.getBatch().setColor(1, 1, 1, internalTime > 1 ? 1 : internalTime); //Opacity: fade in for 1s
             game.getBatch().draw(speedButton,
                     PacketrisGame.GAME_WIDTH * 0.125f - Easing.easeOut(fadeOutPercent, 0, //Respect disposing
-                            -PacketrisGame.GAME_WIDTH * 0.125f - speedButton.getWidth(), 1),
+                            -PacketrisGame.GAME_WIDTH * 0.125f - speedButton.getRegionWidth(), 1),
                     //Ease in vertically for 1 seconds
                     Easing.easeIn(internalTime, PacketrisGame.GAME_HEIGHT * 0.4f - 100, 100, 1),
                     PacketrisGame.GAME_WIDTH * 0.75f,
-                    (PacketrisGame.GAME_WIDTH * 0.75f) / speedButton.getWidth() * speedButton.getHeight());
+                    (PacketrisGame.GAME_WIDTH * 0.75f) / speedButton.getRegionWidth() * speedButton.getRegionHeight());
         }
 
         game.getBatch().end();
@@ -136,7 +131,6 @@ public class MainMenuScreen implements Screen
         if (Gdx.input.isTouched())
         {
             //Get touch position
-            Vector3 touchPos = new Vector3();
             touchPos.set(Gdx.input.getX(), Gdx.input.getY(), 0);
             camera.unproject(touchPos);
 
@@ -145,14 +139,14 @@ public class MainMenuScreen implements Screen
             {
                 //Match y coordinate of touch if it hits a button
                 if (Math.abs(touchPos.y - (PacketrisGame.GAME_HEIGHT * 0.5f +
-                        (PacketrisGame.GAME_WIDTH * 0.75f) / standardbutton.getWidth() *
-                                standardbutton.getHeight() * 0.5))
-                        < (PacketrisGame.GAME_WIDTH * 0.75f) / standardbutton.getWidth() * standardbutton.getHeight() * 0.5f)
+                        (PacketrisGame.GAME_WIDTH * 0.75f) / standardbutton.getRegionWidth() *
+                                standardbutton.getRegionHeight() * 0.5))
+                        < (PacketrisGame.GAME_WIDTH * 0.75f) / standardbutton.getRegionWidth() * standardbutton.getRegionHeight() * 0.5f)
                     lastButton = 0;
                 else if (Math.abs(touchPos.y - (PacketrisGame.GAME_HEIGHT * 0.4f +
-                        (PacketrisGame.GAME_WIDTH * 0.75f) / speedButton.getWidth() *
-                                speedButton.getHeight() * 0.5)) < (PacketrisGame.GAME_WIDTH * 0.75f) /
-                        speedButton.getWidth() * speedButton.getHeight() * 0.5f)
+                        (PacketrisGame.GAME_WIDTH * 0.75f) / speedButton.getRegionWidth() *
+                                speedButton.getRegionHeight() * 0.5)) < (PacketrisGame.GAME_WIDTH * 0.75f) /
+                        speedButton.getRegionWidth() * speedButton.getRegionHeight() * 0.5f)
                     lastButton = 1;
                 else
                     lastButton = -1; //no button selected
@@ -196,7 +190,8 @@ public class MainMenuScreen implements Screen
     @Override
     public void show()
     {
-        backgroundMusic.play();
+        //keeps playing if coming from the result screen of a game
+        game.getAudio().playMusic(Assets.MENU_MUSIC, 0.5f, true);
     }
 
     @Override
@@ -217,11 +212,7 @@ public class MainMenuScreen implements Screen
     @Override
     public void dispose()
     {
-        title.dispose();
-        standardbutton.dispose();
-        speedButton.dispose();
-        background.dispose();
-        backgroundMusic.dispose();
+        game.getAssets().release(Assets.MENU_BACKGROUND);
     }
 
 
@@ -2,39 +2,111 @@ package com.coaxial.packetris;
 
 import com.badlogic.gdx.Game;
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input;
+import com.badlogic.gdx.Screen;
+import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
-import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
-import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.TimeUtils;
+import com.coaxial.packetris.engine.InputSource;
+import com.coaxial.packetris.engine.Layout;
+import com.coaxial.packetris.engine.Replay;
+import com.coaxial.packetris.util.AllocationCounter;
+import com.coaxial.packetris.util.AllocationMonitor;
+import com.coaxial.packetris.util.FrameProfiler;
+import com.coaxial.packetris.util.SplitRandom;
 
 /**
  * Game starter class.
- * Holds the sprite batch und ShapeRenderers to use.
+ * Holds the sprite batch, the assets, the audio director, the persistent store, the score history and the replays
+ * to use.
  */
 public class PacketrisGame extends Game {
 	private SpriteBatch batch;
-	private ShapeRenderer renderer;
-	private ShapeRenderer lineRenderer;
-	private BitmapFont ingameFont;
-	private BitmapFont titleFont;
-	public static final int GAME_WIDTH = 960;
-	public static final int GAME_HEIGHT = 1600;
+	private Assets assets;
+	private AudioDirector audio;
+	private Persistence persistence;
+	private ScoreHistory scoreHistory;
+	private ReplayArchive replays;
+	public static final int GAME_WIDTH = Layout.GAME_WIDTH;
+	public static final int GAME_HEIGHT = Layout.GAME_HEIGHT;
+	private final AllocationCounter allocationCounter; //null if allocations should not be counted
+	private AllocationMonitor allocationMonitor;
+	private final FrameProfiler profiler = new FrameProfiler(); //disabled unless enabled by the launcher
+	private Replay startReplay; //played instead of showing the main menu; null if none
+	private Replay.Speed startReplaySpeed;
+	private boolean seedFixed = false; //if true, every round uses the fixed seed
+	private long fixedSeed;
+	private GameType autoplayType;
+	private InputSource autoplayInput; //plays every round instead of the user; null if the user plays
+
+	public PacketrisGame()
+	{
+		this(null);
+	}
+
+	/**
+	 * @param allocationCounter platform specific allocation counter; if set, every frame that allocates memory is logged
+	 */
+	public PacketrisGame(AllocationCounter allocationCounter)
+	{
+		this.allocationCounter = allocationCounter;
+	}
+
+	/**
+	 * Uses the same seed for every round, so every round spawns the same packets at the same positions.
+	 * Must be called before the game is created.
+	 *
+	 * @param seed the seed
+	 */
+	public void setFixedSeed(long seed)
+	{
+		seedFixed = true;
+		fixedSeed = seed;
+	}
+
+	/**
+	 * Starts a round instead of showing the main menu after the intro and lets an input source play every round,
+	 * starting the next one when a round is over - e.g. to profile the game without touching it.
+	 * Must be called before the game is created.
+	 *
+	 * @param type  the type of the rounds
+	 * @param input the input source
+	 */
+	public void setAutoplay(GameType type, InputSource input)
+	{
+		autoplayType = type;
+		autoplayInput = input;
+	}
+
+	/**
+	 * Plays a replay instead of showing the main menu after the intro, e.g. to reproduce a reported bug.
+	 * Must be called before the game is created.
+	 *
+	 * @param replay the replay
+	 * @param speed  the initial playback speed
+	 */
+	public void setStartReplay(Replay replay, Replay.Speed speed)
+	{
+		startReplay = replay;
+		startReplaySpeed = speed;
+	}
 
 	/**
-	 * Initiating the game by creating the SpriteBatch, all Renderers and all fonts.
+	 * Initiating the game by creating the SpriteBatch and starting to load all assets asynchronously.
+	 * The {@link IntroScreen} is shown while loading.
 	 */
 	public void create() {
 		Gdx.input.setCatchBackKey(true);
+		if (allocationCounter != null)
+			allocationMonitor = new AllocationMonitor(allocationCounter);
 		batch = new SpriteBatch();
-		renderer = new ShapeRenderer();
-		lineRenderer = new ShapeRenderer();
-		FreeTypeFontGenerator generator = new FreeTypeFontGenerator(Gdx.files.internal("Whimsy.TTF"));
-		FreeTypeFontGenerator.FreeTypeFontParameter param = new FreeTypeFontGenerator.FreeTypeFontParameter();
-		param.size = 66;
-		ingameFont = generator.generateFont(param);
-		param.size = 100;
-		titleFont = generator.generateFont(param);
-		generator.dispose();
+		persistence = new Persistence();
+		scoreHistory = new ScoreHistory(persistence);
+		replays = new ReplayArchive(persistence);
+		assets = new Assets();
+		audio = new AudioDirector(assets);
 
 		//start rendering the game by switching to the IntroScreen
 		this.setScreen(new IntroScreen(this));
@@ -45,34 +117,161 @@ public class PacketrisGame extends Game {
 		return batch;
 	}
 
-	public ShapeRenderer getRenderer()
+	public Assets getAssets()
+	{
+		return assets;
+	}
+
+	public AudioDirector getAudio()
+	{
+		return audio;
+	}
+
+	public Persistence getPersistence()
 	{
-		return renderer;
+		return persistence;
 	}
 
-	public ShapeRenderer getShapeRenderer()
+	public ScoreHistory getScoreHistory()
 	{
-		return lineRenderer;
+		return scoreHistory;
+	}
+
+	public ReplayArchive getReplays()
+	{
+		return replays;
+	}
+
+	/**
+	 * @return the screen to show after the intro: the main menu, the replay to play on start or an autoplayed round
+	 */
+	Screen createStartScreen()
+	{
+		if (startReplay != null)
+			return new GameScreen(this, startReplay, startReplaySpeed, false);
+		if (autoplayInput != null)
+			return new GameScreen(this, autoplayType, false);
+		return new MainMenuScreen(this, false);
+	}
+
+	/**
+	 * @return the seed of a new round
+	 */
+	long newSeed()
+	{
+		return seedFixed ? fixedSeed : SplitRandom.newSeed();
+	}
+
+	/**
+	 * @return the input source playing the rounds; null if the user plays
+	 */
+	InputSource getAutoplayInput()
+	{
+		return autoplayInput;
+	}
+
+	public FrameProfiler getProfiler()
+	{
+		return profiler;
+	}
+
+	public UiAtlas getAtlas()
+	{
+		return assets.getAtlas();
 	}
 
 	public BitmapFont getIngameFont()
 	{
-		return ingameFont;
+		return assets.getIngameFont();
 	}
 
 	public BitmapFont getTitleFont()
 	{
-		return titleFont;
+		return assets.getTitleFont();
+	}
+
+	/**
+	 * Unloads all assets that are not used by the current screen. Called by the launcher when memory is low.
+	 */
+	public void trimMemory()
+	{
+		assets.trim();
+	}
+
+	/**
+	 * Switches the screen and reports the texture memory used afterwards.
+	 */
+	@Override
+	public void setScreen(Screen screen) {
+		super.setScreen(screen);
+		if (assets.isUiReady())
+			assets.logTextureMemory();
 	}
 
 	public void render() {
-		super.render();	}
+		if (allocationMonitor != null)
+			allocationMonitor.beginFrame();
+		profiler.beginFrame();
+		assets.update(); //continue loading in the background
+		audio.update(Gdx.graphics.getDeltaTime());
+		super.render();
+		profiler.endFrame();
+		if (profiler.isEnabled() && Gdx.input.isKeyJustPressed(Input.Keys.F3))
+			profiler.setOverlayVisible(!profiler.isOverlayVisible());
+		if (assets.isUiReady())
+			profiler.drawOverlay(batch, getIngameFont(), getAtlas().getPixel(), Gdx.graphics.getDeltaTime());
+		if (allocationMonitor != null)
+			allocationMonitor.endFrame();
+	}
+
+	/**
+	 * Writes the report of the frame profiler to <code>profiles/</code> in the local storage, in the background.
+	 */
+	public void saveProfile() {
+		final FileHandle file = Gdx.files.local("profiles/frames-" + TimeUtils.millis() + ".txt");
+		final String report = profiler.report();
+		persistence.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					file.writeString(report, false, "UTF-8");
+				} catch (GdxRuntimeException e) {
+					Gdx.app.error("Profiler", "Could not save the profile", e);
+				}
+			}
+		});
+		Gdx.app.log("Profiler", "Saving the profile to " + file.path());
+	}
+
+	/**
+	 * Unloads all cached assets that are not used by the current screen while the app is in the background
+	 * and waits until everything has been saved, since the app may be killed now. Saves the frame profile
+	 * if profiling is enabled.
+	 */
+	@Override
+	public void pause() {
+		super.pause();
+		if (profiler.isEnabled())
+			saveProfile();
+		persistence.drain();
+		assets.trim();
+	}
+
+	/**
+	 * Starts loading the cached assets again.
+	 */
+	@Override
+	public void resume() {
+		assets.cache();
+		super.resume();
+	}
 
 	public void dispose() {
+		super.dispose();
+		audio.dispose();
+		persistence.dispose();
 		batch.dispose();
-		ingameFont.dispose();
-		titleFont.dispose();
-		renderer.dispose();
+		assets.dispose();
 	}
 
 }
@@ -0,0 +1,362 @@
+package com.coaxial.packetris;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Preferences;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import com.badlogic.gdx.utils.StreamUtils;
+import com.coaxial.packetris.util.AtomicFiles;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent key value store for scores and settings, owned by the {@link PacketrisGame} instance.
+ * <p>
+ * All values are held in memory, so reading never touches the disk. Writes are collected until {@link #flush()}
+ * is called and then written by a background thread, so the render thread never waits for the disk; several
+ * values put before a flush are written together.
+ * <p>
+ * Writes are crash safe: every batch is appended to a log of checksummed records and synced before it counts as
+ * written. When the log has grown, the whole store is written to a new snapshot, which atomically replaces the
+ * old one before the log is cleared. On start, the snapshot is read and the log is replayed on top of it,
+ * ignoring a torn record at its end.
+ * <p>
+ * {@link #drain()} waits for all writes; it is called when the app is paused and disposed.
+ */
+
+public class Persistence implements Disposable
+{
+    private static final String TAG = "Persistence";
+    private static final String DIRECTORY = "save/";
+    private static final String LEGACY_PREFERENCES = "ScoreSave"; //values are imported once from there
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int CHECKPOINT_RECORDS = 64; //log size that triggers writing a new snapshot
+
+    private final File snapshotFile;
+    private final File tempFile;
+    private final File logFile;
+    private final ObjectIntMap<String> values = new ObjectIntMap<String>(); //used by the render thread only
+    private final ObjectIntMap<String> pending = new ObjectIntMap<String>(); //not yet flushed
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, TAG);
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private Future<?> lastWrite; //null if nothing has been written yet
+
+    //state of the files, used by the writer thread only
+    private final ObjectIntMap<String> written = new ObjectIntMap<String>();
+    private int logRecords;
+
+    /**
+     * Reads the store from the local storage. Must be called before the first frame is rendered.
+     */
+    public Persistence()
+    {
+        FileHandle directory = Gdx.files.local(DIRECTORY);
+        directory.mkdirs();
+        snapshotFile = directory.child("store.bin").file();
+        tempFile = directory.child("store.tmp").file();
+        logFile = directory.child("store.log").file();
+
+        try
+        {
+            AtomicFiles.recover(tempFile, snapshotFile);
+        }
+        catch (IOException e)
+        {
+            Gdx.app.error(TAG, "Could not recover the snapshot", e);
+        }
+        boolean exists = snapshotFile.exists() || tempFile.exists() || logFile.exists();
+        try
+        {
+            readSnapshot();
+        }
+        catch (IOException e)
+        {
+            Gdx.app.error(TAG, "Could not read the snapshot", e);
+        }
+        try
+        {
+            replayLog();
+        }
+        catch (IOException e)
+        {
+            Gdx.app.error(TAG, "Could not read the log", e);
+        }
+        written.putAll(values);
+        if (!exists)
+            importLegacy();
+        else if (logFile.exists()) //also drops a torn record, which new records must not be appended to
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    checkpoint();
+                }
+            });
+    }
+
+    public int getInteger(String key, int defaultValue)
+    {
+        return values.get(key, defaultValue);
+    }
+
+    /**
+     * Sets a value. It is written to the disk on the next {@link #flush()}.
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    public void putInteger(String key, int value)
+    {
+        if (values.containsKey(key) && values.get(key, 0) == value)
+            return;
+        values.put(key, value);
+        pending.put(key, value);
+    }
+
+    /**
+     * Hands all values put since the last flush to the background thread. Does not wait for the disk.
+     */
+    public void flush()
+    {
+        if (pending.size == 0)
+            return;
+        final ObjectIntMap<String> batch = new ObjectIntMap<String>(pending);
+        pending.clear();
+        lastWrite = executor.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                write(batch);
+            }
+        });
+    }
+
+    /**
+     * Runs a task on the writer thread after all writes handed over so far. Used by stores writing their own
+     * files, so that {@link #drain()} waits for them as well.
+     *
+     * @param task the task; must not access the disk from anywhere else
+     */
+    public void execute(Runnable task)
+    {
+        lastWrite = executor.submit(task);
+    }
+
+    /**
+     * Flushes and waits until everything has been written.
+     */
+    public void drain()
+    {
+        flush();
+        if (lastWrite == null)
+            return;
+        try
+        {
+            lastWrite.get(); //the executor runs the writes in order
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            Gdx.app.error(TAG, "Writing failed", e.getCause());
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        drain();
+        executor.shutdown();
+    }
+
+    /**
+     * Copies the values of the preferences used by earlier versions.
+     */
+    private void importLegacy()
+    {
+        Preferences preferences = Gdx.app.getPreferences(LEGACY_PREFERENCES);
+        for (Map.Entry<String, ?> entry : preferences.get().entrySet())
+        {
+            try
+            {
+                putInteger(entry.getKey(), Integer.parseInt(String.valueOf(entry.getValue())));
+            }
+            catch (NumberFormatException e)
+            {
+                //not an integer value, not used by the game
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Appends a batch to the log. Runs on the writer thread.
+     */
+    private void write(ObjectIntMap<String> batch)
+    {
+        FileOutputStream file = null;
+        try
+        {
+            file = new FileOutputStream(logFile, true);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+            CRC32 crc = new CRC32();
+            for (ObjectIntMap.Entry<String> entry : batch.entries())
+            {
+                byte[] key = entry.key.getBytes("UTF-8");
+                out.writeShort(key.length);
+                out.write(key);
+                out.writeInt(entry.value);
+                out.writeInt(checksum(crc, key, entry.value));
+                written.put(entry.key, entry.value);
+                logRecords++;
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        catch (IOException e)
+        {
+            Gdx.app.error(TAG, "Could not write the log", e);
+            checkpoint(); //nothing may be appended to a partly written record
+            return;
+        }
+        finally
+        {
+            StreamUtils.closeQuietly(file);
+        }
+
+        if (logRecords >= CHECKPOINT_RECORDS)
+            checkpoint();
+    }
+
+    /**
+     * Replaces the snapshot by the current state and clears the log. Runs on the writer thread.
+     * If the app is killed in between, the old snapshot and the log or the new snapshot and the log are read;
+     * both lead to the same values.
+     */
+    private void checkpoint()
+    {
+        FileOutputStream file = null;
+        try
+        {
+            file = new FileOutputStream(tempFile);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(written.size);
+            for (ObjectIntMap.Entry<String> entry : written.entries())
+            {
+                out.writeUTF(entry.key);
+                out.writeInt(entry.value);
+            }
+            out.flush();
+            file.getFD().sync();
+            file.close();
+            file = null;
+            AtomicFiles.replace(tempFile, snapshotFile);
+            if (logFile.exists() && !logFile.delete())
+                throw new IOException("Could not delete " + logFile);
+            logRecords = 0;
+        }
+        catch (IOException e)
+        {
+            Gdx.app.error(TAG, "Could not write the snapshot", e);
+        }
+        finally
+        {
+            StreamUtils.closeQuietly(file);
+        }
+    }
+
+    private void readSnapshot() throws IOException
+    {
+        if (!snapshotFile.exists())
+            return;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)));
+        try
+        {
+            if (in.readInt() != SNAPSHOT_VERSION)
+                throw new IOException("Unknown snapshot version");
+            int count = in.readInt();
+            for (int i = 0; i < count; ++i)
+                values.put(in.readUTF(), in.readInt());
+        }
+        finally
+        {
+            StreamUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Applies all complete records of the log. A record torn by a crash can only be the last one, since every
+     * batch is synced before the next one is written.
+     */
+    private void replayLog() throws IOException
+    {
+        if (!logFile.exists())
+            return;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+        CRC32 crc = new CRC32();
+        try
+        {
+            while (true)
+            {
+                byte[] key = new byte[in.readUnsignedShort()];
+                in.readFully(key);
+                int value = in.readInt();
+                if (in.readInt() != checksum(crc, key, value))
+                {
+                    Gdx.app.error(TAG, "Ignoring a corrupt record at the end of the log");
+                    break;
+                }
+                values.put(new String(key, "UTF-8"), value);
+                logRecords++;
+            }
+        }
+        catch (EOFException e)
+        {
+            //end of the log, or a torn record
+        }
+        finally
+        {
+            StreamUtils.closeQuietly(in);
+        }
+    }
+
+    private static int checksum(CRC32 crc, byte[] key, int value)
+    {
+        crc.reset();
+        crc.update(key);
+        crc.update(value >>> 24);
+        crc.update(value >>> 16);
+        crc.update(value >>> 8);
+        crc.update(value);
+        return (int) crc.getValue();
+    }
+}
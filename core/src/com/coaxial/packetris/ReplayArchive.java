@@ -0,0 +1,133 @@
+package com.coaxial.packetris;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.StreamUtils;
+import com.coaxial.packetris.engine.Replay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Keeps the replays of the latest rounds in the local storage, owned by the {@link PacketrisGame} instance.
+ * <p>
+ * Every replay is a file of its own, named after the game type and the seed of the round - the seed is also
+ * saved in the {@link ScoreHistory}, so a round of the history can be matched with its replay. Only the latest
+ * {@link #MAX_REPLAYS} replays are kept. The files are written on the writer thread of the {@link Persistence}.
+ */
+
+public class ReplayArchive
+{
+    public static final int MAX_REPLAYS = 100;
+    public static final String EXTENSION = "rpl";
+    private static final String TAG = "ReplayArchive";
+
+    private final Persistence persistence;
+    private final FileHandle directory;
+
+    /**
+     * @param persistence the store whose writer thread writes the files
+     */
+    public ReplayArchive(Persistence persistence)
+    {
+        this.persistence = persistence;
+        directory = Gdx.files.local("save/replays/");
+        directory.mkdirs();
+    }
+
+    /**
+     * Saves the replay of a finished round in the background and deletes the oldest replays.
+     *
+     * @param replay the replay; must have been ended
+     */
+    public void save(Replay replay)
+    {
+        final FileHandle file = directory.child(replay.getType().toString().toLowerCase() + "-"
+                + Long.toHexString(replay.getSeed()) + "." + EXTENSION);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + replay.getActionCount());
+        try
+        {
+            replay.write(bytes);
+        }
+        catch (IOException e)
+        {
+            throw new GdxRuntimeException(e); //not thrown by a byte array
+        }
+        final byte[] content = bytes.toByteArray();
+        persistence.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    file.writeBytes(content, false);
+                    prune();
+                }
+                catch (GdxRuntimeException e)
+                {
+                    Gdx.app.error(TAG, "Could not save the replay", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the files of all saved replays, the latest first
+     */
+    public FileHandle[] list()
+    {
+        FileHandle[] files = directory.list("." + EXTENSION);
+        Arrays.sort(files, new Comparator<FileHandle>()
+        {
+            @Override
+            public int compare(FileHandle a, FileHandle b)
+            {
+                return Long.compare(b.lastModified(), a.lastModified());
+            }
+        });
+        return files;
+    }
+
+    /**
+     * Reads a replay, e.g. one of {@link #list()} or a file sent by a player.
+     *
+     * @param file the file
+     * @return the replay
+     * @throws IOException if the file cannot be read or is not a valid replay
+     */
+    public static Replay load(FileHandle file) throws IOException
+    {
+        InputStream in;
+        try
+        {
+            in = file.read(256);
+        }
+        catch (GdxRuntimeException e)
+        {
+            throw new IOException("Could not open " + file, e);
+        }
+        try
+        {
+            return Replay.read(in);
+        }
+        finally
+        {
+            StreamUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Deletes the oldest replays exceeding {@link #MAX_REPLAYS}. Runs on the writer thread.
+     */
+    private void prune()
+    {
+        FileHandle[] files = list();
+        for (int i = MAX_REPLAYS; i < files.length; ++i)
+            files[i].delete();
+    }
+}
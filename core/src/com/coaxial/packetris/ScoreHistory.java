@@ -0,0 +1,526 @@
+package com.coaxial.packetris;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.StreamUtils;
+import com.coaxial.packetris.util.AtomicFiles;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * History of all finished rounds, owned by the {@link PacketrisGame} instance.
+ * <p>
+ * Rounds are appended to a binary log of fixed size records. Queries are answered by an index held in memory:
+ * per game type, the number of rounds scoring at least each possible score and the best rounds. Rank and
+ * percentile of a score therefore take constant time, no matter how many rounds have been played.
+ * <p>
+ * The index is saved to its own file from time to time, together with the position in the log up to which it
+ * covers the rounds. On start, the index is read and only the rounds after that position are replayed. Saving
+ * the index compacts the history: the rounds are folded into the index (the best ones are kept as complete
+ * records) and the log is started anew. Every file is replaced atomically and a generation number tells whether
+ * the log belongs to the saved index, so an interrupted compaction never counts a round twice.
+ * <p>
+ * All files are written on the writer thread of the {@link Persistence}.
+ */
+
+public class ScoreHistory
+{
+    public static final int TOP_ROUNDS = 10; //best rounds kept per game type
+    private static final String TAG = "ScoreHistory";
+    private static final int SCORE_STEP = 10; //all scores are multiples of this
+    private static final int BUCKETS = 65536 / SCORE_STEP; //higher scores share the last bucket
+    private static final int LOG_MAGIC = 0x50524C47;
+    private static final int INDEX_VERSION = 1;
+    private static final int LOG_HEADER = 8; //magic and generation
+    private static final int COMPACT_ROUNDS = 256; //rounds in the log that trigger a compaction
+
+    private final Persistence persistence;
+    private final File logFile;
+    private final File indexFile;
+    private final File indexTempFile;
+    private final File logTempFile;
+
+    //index, used by the render thread only
+    private final int[][] atLeast = new int[GameType.values().length][BUCKETS + 1]; //rounds with bucket >= i
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final Array<Round>[] top = new Array[GameType.values().length]; //best first
+    private int generation;
+    private int unindexed; //rounds in the log that are not covered by the saved index
+
+    /**
+     * A finished round.
+     */
+    public static class Round
+    {
+        static final int SIZE = 4 + 1 + 2 + 2 + 4 + 8; //in bytes, without checksum
+
+        private final int score;
+        private final GameType type;
+        private final int placedPackets;
+        private final int fillPermille; //fill ratio in thousandths
+        private final int ticks; //duration in simulation ticks
+        private final long seed;
+
+        public Round(int score, GameType type, int placedPackets, float fillRatio, long ticks, long seed)
+        {
+            this(score, type, placedPackets, Math.round(fillRatio * 1000), (int) Math.min(Integer.MAX_VALUE, ticks), seed);
+        }
+
+        private Round(int score, GameType type, int placedPackets, int fillPermille, int ticks, long seed)
+        {
+            this.score = score;
+            this.type = type;
+            this.placedPackets = placedPackets;
+            this.fillPermille = fillPermille;
+            this.ticks = ticks;
+            this.seed = seed;
+        }
+
+        private void write(ByteBuffer buffer)
+        {
+            buffer.putInt(score).put((byte) type.ordinal()).putShort((short) placedPackets)
+                    .putShort((short) fillPermille).putInt(ticks).putLong(seed);
+        }
+
+        private static Round read(ByteBuffer buffer)
+        {
+            int score = buffer.getInt();
+            int type = buffer.get();
+            int placedPackets = buffer.getShort() & 0xFFFF;
+            int fillPermille = buffer.getShort() & 0xFFFF;
+            int ticks = buffer.getInt();
+            long seed = buffer.getLong();
+            if (type < 0 || type >= GameType.values().length)
+                throw new IllegalArgumentException("Unknown game type " + type);
+            return new Round(score, GameType.values()[type], placedPackets, fillPermille, ticks, seed);
+        }
+
+        public int getScore()
+        {
+            return score;
+        }
+
+        public GameType getType()
+        {
+            return type;
+        }
+
+        public int getPlacedPackets()
+        {
+            return placedPackets;
+        }
+
+        public float getFillRatio()
+        {
+            return fillPermille / 1000f;
+        }
+
+        public int getTicks()
+        {
+            return ticks;
+        }
+
+        public long getSeed()
+        {
+            return seed;
+        }
+    }
+
+    /**
+     * Reads the index and the rounds played since it was saved. Must be called before the first frame is rendered.
+     *
+     * @param persistence the store whose writer thread writes the files
+     */
+    public ScoreHistory(Persistence persistence)
+    {
+        this.persistence = persistence;
+        FileHandle directory = Gdx.files.local("save/");
+        directory.mkdirs();
+        logFile = directory.child("rounds.log").file();
+        indexFile = directory.child("rounds.idx").file();
+        indexTempFile = directory.child("rounds.idx.tmp").file();
+        logTempFile = directory.child("rounds.log.tmp").file();
+        for (int i = 0; i < top.length; ++i)
+            top[i] = new Array<Round>(TOP_ROUNDS + 1);
+
+        try
+        {
+            AtomicFiles.recover(indexTempFile, indexFile);
+            AtomicFiles.recover(logTempFile, logFile);
+        }
+        catch (IOException e)
+        {
+            Gdx.app.error(TAG, "Could not recover the history", e);
+        }
+        long offset = LOG_HEADER;
+        try
+        {
+            offset = readIndex();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            Gdx.app.error(TAG, "Could not read the index, rebuilding it from the log", e);
+            clear();
+        }
+        boolean valid;
+        try
+        {
+            valid = replayLog(offset);
+        }
+        catch (IOException e)
+        {
+            Gdx.app.error(TAG, "Could not read the log", e);
+            valid = false;
+        }
+        if (!valid || unindexed >= COMPACT_ROUNDS)
+            compact();
+    }
+
+    /**
+     * Adds a finished round. The index is updated immediately, the round is written in the background.
+     *
+     * @param round the round
+     */
+    public void add(Round round)
+    {
+        index(round);
+        final byte[] record = encode(round);
+        persistence.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                append(record);
+            }
+        });
+        if (++unindexed >= COMPACT_ROUNDS)
+            compact();
+    }
+
+    /**
+     * @param type  the game type
+     * @param score the score
+     * @return the rank of the score among all rounds of the game type, 1 being the best; tied scores share the rank
+     */
+    public int getRank(GameType type, int score)
+    {
+        return atLeast[type.ordinal()][bucket(score) + 1] + 1;
+    }
+
+    /**
+     * @param type  the game type
+     * @param score the score
+     * @return the percentage of rounds of the game type scoring lower, between 0 and 100
+     */
+    public float getPercentile(GameType type, int score)
+    {
+        int[] counts = atLeast[type.ordinal()];
+        if (counts[0] == 0)
+            return 100;
+        return 100f * (counts[0] - counts[bucket(score)]) / counts[0];
+    }
+
+    /**
+     * @param type the game type
+     * @return the number of finished rounds of the game type
+     */
+    public int getCount(GameType type)
+    {
+        return atLeast[type.ordinal()][0];
+    }
+
+    /**
+     * @param type the game type
+     * @return up to {@link #TOP_ROUNDS} best rounds of the game type, best first; must not be modified
+     */
+    public Array<Round> getTop(GameType type)
+    {
+        return top[type.ordinal()];
+    }
+
+    private static int bucket(int score)
+    {
+        return Math.max(0, Math.min(BUCKETS - 1, score / SCORE_STEP));
+    }
+
+    private void index(Round round)
+    {
+        int[] counts = atLeast[round.type.ordinal()];
+        for (int i = bucket(round.score); i >= 0; --i)
+            counts[i]++;
+
+        Array<Round> best = top[round.type.ordinal()];
+        int position = best.size;
+        while (position > 0 && best.get(position - 1).score < round.score)
+            position--; //earlier rounds stay in front of tied ones
+        if (position < TOP_ROUNDS)
+        {
+            best.insert(position, round);
+            if (best.size > TOP_ROUNDS)
+                best.pop();
+        }
+    }
+
+    private void clear()
+    {
+        for (int[] counts : atLeast)
+            Arrays.fill(counts, 0);
+        for (Array<Round> best : top)
+            best.clear();
+        generation = 0;
+    }
+
+    private static byte[] encode(Round round)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(Round.SIZE + 4);
+        round.write(buffer);
+        buffer.putInt(checksum(buffer.array(), Round.SIZE));
+        return buffer.array();
+    }
+
+    private static int checksum(byte[] bytes, int length)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Reads the saved index.
+     *
+     * @return the position in the log up to which the index covers the rounds
+     */
+    private long readIndex() throws IOException
+    {
+        if (!indexFile.exists())
+            return LOG_HEADER;
+        byte[] bytes = new byte[(int) indexFile.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(indexFile));
+        try
+        {
+            in.readFully(bytes);
+        }
+        finally
+        {
+            StreamUtils.closeQuietly(in);
+        }
+        if (bytes.length < 4 || checksum(bytes, bytes.length - 4) != ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt())
+            throw new IOException("Index corrupt");
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, bytes.length - 4);
+        if (buffer.getInt() != INDEX_VERSION)
+            throw new IOException("Unknown index version");
+        generation = buffer.getInt();
+        long offset = buffer.getLong();
+        for (int type = buffer.getInt() - 1; type >= 0; --type)
+        {
+            int[] counts = atLeast[buffer.getInt()];
+            for (int buckets = buffer.getInt(); buckets > 0; --buckets)
+            {
+                int bucket = buffer.getShort() & 0xFFFF;
+                counts[bucket] += buffer.getInt();
+            }
+            for (int i = BUCKETS - 1; i >= 0; --i) //from counts per bucket to rounds with at least the bucket
+                counts[i] += counts[i + 1];
+        }
+        for (int rounds = buffer.getInt(); rounds > 0; --rounds)
+        {
+            Round round = Round.read(buffer);
+            top[round.type.ordinal()].add(round);
+        }
+        return offset;
+    }
+
+    /**
+     * Serializes the index, covering every round added so far.
+     */
+    private byte[] encodeIndex(int newGeneration)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try
+        {
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(newGeneration);
+            out.writeLong(LOG_HEADER); //the new log is empty
+            out.writeInt(atLeast.length);
+            for (int type = 0; type < atLeast.length; ++type)
+            {
+                int[] counts = atLeast[type];
+                int buckets = 0;
+                for (int i = 0; i < BUCKETS; ++i)
+                    if (counts[i] != counts[i + 1])
+                        buckets++;
+                out.writeInt(type);
+                out.writeInt(buckets);
+                for (int i = 0; i < BUCKETS; ++i)
+                    if (counts[i] != counts[i + 1])
+                    {
+                        out.writeShort(i);
+                        out.writeInt(counts[i] - counts[i + 1]);
+                    }
+            }
+            int rounds = 0;
+            for (Array<Round> best : top)
+                rounds += best.size;
+            out.writeInt(rounds);
+            ByteBuffer buffer = ByteBuffer.allocate(Round.SIZE);
+            for (Array<Round> best : top)
+                for (Round round : best)
+                {
+                    buffer.clear();
+                    round.write(buffer);
+                    out.write(buffer.array());
+                }
+            out.writeInt(checksum(bytes.toByteArray(), bytes.size()));
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e); //not thrown by an in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Adds all complete rounds of the log after the given position to the index.
+     *
+     * @return true if the log can be appended to; false if it has to be started anew
+     */
+    private boolean replayLog(long offset) throws IOException
+    {
+        if (!logFile.exists())
+            return false; //a new log is started
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+        try
+        {
+            if (in.readInt() != LOG_MAGIC)
+                throw new IOException("Not a score log");
+            int logGeneration = in.readInt();
+            if (logGeneration < generation)
+                return false; //already covered by the index, the compaction was interrupted
+            if (logGeneration > generation) //the index has been lost, count everything in the log
+            {
+                generation = logGeneration;
+                offset = LOG_HEADER;
+            }
+            for (long skip = offset - LOG_HEADER; skip > 0; )
+            {
+                long skipped = in.skip(skip);
+                if (skipped <= 0)
+                    return false;
+                skip -= skipped;
+            }
+            byte[] record = new byte[Round.SIZE + 4];
+            long position = offset;
+            while (true)
+            {
+                try
+                {
+                    in.readFully(record);
+                }
+                catch (EOFException e)
+                {
+                    return position == logFile.length(); //false if the last record is torn
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                if (checksum(record, Round.SIZE) != buffer.getInt(Round.SIZE))
+                {
+                    Gdx.app.error(TAG, "Ignoring the log after a corrupt round");
+                    return false;
+                }
+                index(Round.read(buffer));
+                unindexed++;
+                position += record.length;
+            }
+        }
+        finally
+        {
+            StreamUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Saves the index covering all rounds added so far and starts a new log. The index is serialized here, so
+     * it matches the log exactly when the writer thread gets to it.
+     */
+    private void compact()
+    {
+        final int newGeneration = ++generation;
+        final byte[] index = encodeIndex(newGeneration);
+        unindexed = 0;
+        persistence.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    //the index is replaced first: an old log is ignored by its generation if the app dies now
+                    replace(indexFile, indexTempFile, index);
+                    ByteBuffer header = ByteBuffer.allocate(LOG_HEADER);
+                    header.putInt(LOG_MAGIC).putInt(newGeneration);
+                    replace(logFile, logTempFile, header.array());
+                }
+                catch (IOException e)
+                {
+                    Gdx.app.error(TAG, "Could not compact the history", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Appends a round to the log. Runs on the writer thread.
+     */
+    private void append(byte[] record)
+    {
+        FileOutputStream file = null;
+        try
+        {
+            file = new FileOutputStream(logFile, true);
+            file.write(record);
+            file.getFD().sync();
+        }
+        catch (IOException e)
+        {
+            Gdx.app.error(TAG, "Could not write a round", e);
+        }
+        finally
+        {
+            StreamUtils.closeQuietly(file);
+        }
+    }
+
+    /**
+     * Atomically replaces a file. Runs on the writer thread.
+     */
+    private static void replace(File target, File temp, byte[] content) throws IOException
+    {
+        FileOutputStream file = new FileOutputStream(temp);
+        try
+        {
+            BufferedOutputStream out = new BufferedOutputStream(file);
+            out.write(content);
+            out.flush();
+            file.getFD().sync();
+        }
+        finally
+        {
+            StreamUtils.closeQuietly(file);
+        }
+        AtomicFiles.replace(temp, target);
+    }
+}
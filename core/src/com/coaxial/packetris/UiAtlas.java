@@ -0,0 +1,131 @@
+package com.coaxial.packetris;
+
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.PixmapPacker;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * Packs all UI images, the glyphs of the fonts and a white pixel into one texture at runtime.
+ * <p>
+ * Everything drawn from this atlas can be drawn in a single {@link com.badlogic.gdx.graphics.g2d.SpriteBatch}
+ * pass without texture swaps; plain shapes like packets and lines are drawn by stretching the white pixel.
+ * The images are loaded by the {@link Assets} asset manager. The pages of the fonts are added with
+ * {@link #getPacker()} before calling {@link #finish()}.
+ * If anything does not fit into one page, the packer adds another one.
+ */
+
+public class UiAtlas implements Disposable
+{
+    private static final int PAGE_SIZE = 2048;
+    private static final String PIXEL = "pixel";
+    private static final String[] IMAGES = { //packed in this order; larger images first for a denser packing
+            "title", "standardbutton", "speedbutton", "cup", "left_rotate", "right_rotate",
+            "left_move", "right_move", "redo"};
+
+    private final PixmapPacker packer = new PixmapPacker(PAGE_SIZE, PAGE_SIZE, Pixmap.Format.RGBA8888, 2, false);
+    private final TextureAtlas atlas = new TextureAtlas();
+    private TextureRegion pixel;
+
+    /**
+     * Packs all UI images, which must have been loaded with the asset manager. The images are unloaded afterwards
+     * since they are not needed anymore.
+     *
+     * @param manager the asset manager the images have been queued to by {@link #queue(AssetManager)}
+     */
+    public UiAtlas(AssetManager manager)
+    {
+        for (String name : IMAGES)
+        {
+            packer.pack(name, manager.get(name + ".png", Pixmap.class));
+            manager.unload(name + ".png");
+        }
+        //3x3 so that the center texel is never filtered with its neighbours in the atlas
+        Pixmap white = new Pixmap(3, 3, Pixmap.Format.RGBA8888);
+        white.setColor(Color.WHITE);
+        white.fill();
+        packer.pack(PIXEL, white);
+        white.dispose();
+    }
+
+    /**
+     * Queues all UI images for loading.
+     *
+     * @param manager the asset manager
+     */
+    public static void queue(AssetManager manager)
+    {
+        for (String name : IMAGES)
+            manager.load(name + ".png", Pixmap.class);
+    }
+
+    /**
+     * @param manager the asset manager the images have been queued to
+     * @return true if all UI images are loaded; false otherwise
+     */
+    public static boolean isLoaded(AssetManager manager)
+    {
+        for (String name : IMAGES)
+            if (!manager.isLoaded(name + ".png", Pixmap.class))
+                return false;
+        return true;
+    }
+
+    /**
+     * @return the packer to add the font pages to this atlas
+     */
+    public PixmapPacker getPacker()
+    {
+        return packer;
+    }
+
+    /**
+     * Uploads the packed pages to textures. Must be called after all fonts have been packed.
+     */
+    public void finish()
+    {
+        packer.updateTextureAtlas(atlas, Texture.TextureFilter.Nearest, Texture.TextureFilter.Nearest, false);
+        pixel = new TextureRegion(atlas.findRegion(PIXEL), 1, 1, 1, 1);
+    }
+
+    /**
+     * Returns the region of a UI image or a font page.
+     *
+     * @param name the file name of the image without extension, e.g. "redo", or the name of the font style
+     * @return the region
+     */
+    public TextureRegion get(String name)
+    {
+        TextureRegion region = atlas.findRegion(name);
+        if (region == null)
+            throw new IllegalArgumentException("Unknown image: " + name);
+        return region;
+    }
+
+    /**
+     * @return a single white texel, to be stretched and tinted for drawing rectangles and lines
+     */
+    public TextureRegion getPixel()
+    {
+        return pixel;
+    }
+
+    /**
+     * @return the textures of all pages
+     */
+    public Iterable<Texture> getTextures()
+    {
+        return atlas.getTextures();
+    }
+
+    @Override
+    public void dispose()
+    {
+        atlas.dispose();
+        packer.dispose();
+    }
+}
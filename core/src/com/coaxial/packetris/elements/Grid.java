@@ -0,0 +1,228 @@
+package com.coaxial.packetris.elements;
+
+import com.coaxial.packetris.engine.Layout;
+
+import java.util.Arrays;
+
+/**
+ * Occupancy grid of the main field, containing all packets that stopped moving.
+ * <p>
+ * Every row of the field is stored as a single int bitmask (bit {@code x} set = block in column {@code x}),
+ * so overlap and touch checks of a packet need a handful of bitwise operations per packet row,
+ * independent of how many packets have already been placed.
+ * Additionally, every column is stored as a bitmask of its occupied rows together with its height ("skyline"),
+ * so the row a packet will land on can be computed in O(width), see {@link #landingRow(Shape, int, int)}.
+ * The grid is maintained incrementally by calling {@link #add(Packet)} whenever a packet stops moving.
+ *
+ * @see Packet
+ */
+
+public class Grid
+{
+    public static final int COLUMNS = (Layout.GAME_WIDTH - 2 * Layout.SIDE_SPACE) / Packet.BLOCK_SIDE_LENGTH;
+    public static final int ROWS = (Layout.GAME_HEIGHT - 2 * Layout.BOTTOM_SPACE) / Packet.BLOCK_SIDE_LENGTH;
+    private static final int FLOOR = (1 << COLUMNS) - 1; //the ground below row 0 touches every column
+
+    private final int[] rows = new int[ROWS]; //one bitmask per row of the field, row 0 is the bottom row
+    private final int[] columns = new int[COLUMNS]; //one bitmask per column, bit y set = block in row y
+    private final int[] heights = new int[COLUMNS]; //skyline: amount of rows up to the highest block of each column
+    private int version = 0; //counts modifications, used by packets to invalidate cached landing rows
+
+    /**
+     * Marks all blocks of a packet as occupied. The packet has to be aligned to the game grid vertically,
+     * which is always the case once it stopped moving.
+     *
+     * @param p the packet to add
+     */
+    public void add(Packet p)
+    {
+        if (!p.isAligned())
+            throw new IllegalArgumentException("Packet not aligned to grid");
+        add(p.getShape(), p.getPosX(), p.getRow());
+    }
+
+    /**
+     * Marks all blocks of a shape as occupied, e.g. to evaluate a placement without creating a packet.
+     *
+     * @param shape the shape to add
+     * @param x     the column of the shapes left edge
+     * @param row   the row of the shapes lowest line
+     */
+    public void add(Shape shape, int x, int row)
+    {
+        for (int j = 0; j < shape.getHeight(); ++j)
+            if (row + j >= 0 && row + j < ROWS)
+            {
+                int mask = shape.getRowMask(j) << x;
+                rows[row + j] |= mask;
+                for (; mask != 0; mask &= mask - 1)
+                {
+                    int column = Integer.numberOfTrailingZeros(mask);
+                    columns[column] |= 1 << (row + j);
+                    heights[column] = Math.max(heights[column], row + j + 1);
+                }
+            }
+        version++;
+    }
+
+    /**
+     * Makes this grid a copy of another one.
+     *
+     * @param other the grid to copy
+     */
+    public void set(Grid other)
+    {
+        System.arraycopy(other.rows, 0, rows, 0, ROWS);
+        System.arraycopy(other.columns, 0, columns, 0, COLUMNS);
+        System.arraycopy(other.heights, 0, heights, 0, COLUMNS);
+        version++;
+    }
+
+    /**
+     * Removes all packets, e.g. to start a new round with the same grid.
+     */
+    public void clear()
+    {
+        Arrays.fill(rows, 0);
+        Arrays.fill(columns, 0);
+        Arrays.fill(heights, 0);
+        version++;
+    }
+
+    /**
+     * Checks whether a packet can be placed at its current position without overlapping any placed packet.
+     *
+     * @param p the packet to check
+     * @return true if the packet overlaps no other packet; false otherwise
+     */
+    public boolean fits(Packet p)
+    {
+        return countOverlaps(p) == 0;
+    }
+
+    /**
+     * Counts the blocks of a packet overlapping any placed packet at the packets current pixel position.
+     * A block that is not aligned to the game grid vertically spans two rows, so both are checked.
+     *
+     * @param p the packet whose blocks should be checked
+     * @return the amount of overlapping blocks
+     */
+    public int countOverlaps(Packet p)
+    {
+        int row = p.getRow();
+        boolean aligned = p.isAligned();
+        int n = 0;
+        for (int j = 0; j < p.getHeightInBlocks(); ++j)
+        {
+            int occupied = rowAt(row + j) | (aligned ? 0 : rowAt(row + j + 1));
+            n += Integer.bitCount((p.getRowMask(j) << p.getPosX()) & occupied);
+        }
+        return n;
+    }
+
+    /**
+     * Counts the downward facing block edges of a resting packet touching the ground or any placed packet.
+     * The packet has to be aligned to the game grid vertically.
+     *
+     * @param p the packet whose touches should be counted
+     * @return the amount of touches
+     */
+    public int countTouches(Packet p)
+    {
+        return countTouches(p.getShape(), p.getPosX(), p.getRow());
+    }
+
+    /**
+     * Counts the downward facing block edges of a shape resting at a position, see {@link #countTouches(Packet)}.
+     *
+     * @param shape the shape
+     * @param x     the column of the shapes left edge
+     * @param row   the row of the shapes lowest line
+     * @return the amount of touches
+     */
+    public int countTouches(Shape shape, int x, int row)
+    {
+        int n = 0;
+        for (int j = 0; j < shape.getHeight(); ++j)
+        {
+            int below = row + j == 0 ? FLOOR : rowAt(row + j - 1);
+            n += Integer.bitCount((shape.getRowMask(j) << x) & below);
+        }
+        return n;
+    }
+
+    /**
+     * Calculates the row a shape comes to rest on when falling straight down.
+     * <p>
+     * If the shape is above the skyline of all columns it covers, only the skyline and the bottom profile of the
+     * shape are needed. Otherwise (the shape has been moved below an overhang), the highest block under every
+     * downward facing edge of the shape is looked up in the column bitmasks.
+     *
+     * @param shape   the falling shape
+     * @param x       the column of the shapes left edge
+     * @param fromRow the row of the shapes lowest line; the shape must not overlap any block at this row
+     * @return the landing row, at most {@code fromRow}
+     */
+    public int landingRow(Shape shape, int x, int fromRow)
+    {
+        fromRow = Math.max(0, fromRow);
+        int landing = 0;
+        for (int i = 0; i < shape.getWidth(); ++i)
+        {
+            int bottom = shape.getBottom(i);
+            if (bottom < 0)
+                continue;
+            if (fromRow + bottom >= heights[x + i]) //skyline is below the shape in this column
+                landing = Math.max(landing, heights[x + i] - bottom);
+            else
+                for (int j = bottom; j < shape.getHeight(); ++j)
+                    if (shape.isActive(i, j) && !shape.isActive(i, j - 1))
+                    {
+                        //highest block below this edge
+                        int below = columns[x + i] & ((1 << (fromRow + j)) - 1);
+                        landing = Math.max(landing, 32 - Integer.numberOfLeadingZeros(below) - j);
+                    }
+        }
+        return landing;
+    }
+
+    /**
+     * Returns the height of the skyline of a column.
+     *
+     * @param column the column
+     * @return the amount of rows up to and including the highest block of the column; 0 if the column is empty
+     */
+    public int getHeight(int column)
+    {
+        return heights[column];
+    }
+
+    /**
+     * Counts the empty cells below the skyline, which can only be filled by sliding a packet under an overhang.
+     *
+     * @return the amount of covered empty cells
+     */
+    public int countHoles()
+    {
+        int n = 0;
+        for (int column = 0; column < COLUMNS; ++column)
+            n += heights[column] - Integer.bitCount(columns[column]);
+        return n;
+    }
+
+    public int getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Returns the bitmask of a row; rows outside of the field are empty.
+     *
+     * @param row the row index, 0 is the bottom row
+     * @return the bitmask of occupied columns
+     */
+    public int rowAt(int row)
+    {
+        return row < 0 || row >= ROWS ? 0 : rows[row];
+    }
+}
@@ -1,32 +1,42 @@
 package com.coaxial.packetris.elements;
 
 import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.utils.Pool;
+import com.badlogic.gdx.utils.StringBuilder;
 
 /**
  * Renders a moving up text to show how much points were earned with a placed packet.
+ * Instances are meant to be reused with a {@link Pool}, so showing points does not allocate memory.
  *
  * @see Packet
  * @see com.coaxial.packetris.GameScreen
  */
 
-public class MovingText
+public class MovingText implements Pool.Poolable
 {
     public static final int MOVE_UP_HEIGHT = 300;
     public static final float MOVE_UP_TIME = 2f;
 
-    private String text;
+    private final StringBuilder text = new StringBuilder(8); //reused for every text shown by this instance
     private int x; //curent position
     private int y;
     private float time;
 
-    public MovingText(String text, int x, int y)
+    /**
+     * Sets up this object to show an amount of points, starting at the given position.
+     * @param points the points to show
+     * @param x horizontal start position
+     * @param y vertical start position
+     */
+    public void set(int points, int x, int y)
     {
-        this.text = text;
+        text.setLength(0);
+        text.append(points);
         this.x = x;
         this.y = y;
+        time = 0;
     }
 
     /**
@@ -50,4 +60,11 @@ public class MovingText
     {
         return time < MOVE_UP_TIME;
     }
+
+    @Override
+    public void reset()
+    {
+        text.setLength(0);
+        time = 0;
+    }
 }
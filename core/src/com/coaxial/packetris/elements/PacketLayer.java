@@ -0,0 +1,156 @@
+package com.coaxial.packetris.elements;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.badlogic.gdx.utils.Disposable;
+import com.coaxial.packetris.PacketrisGame;
+
+import java.util.List;
+
+/**
+ * Off-screen layer containing all packets that do not move anymore.
+ * <p>
+ * Settled packets never change, so they are rendered only once into a {@link FrameBuffer} when they land
+ * and the whole layer is drawn as a single textured quad each frame. This keeps the amount of vertices per frame
+ * constant, no matter how many packets are in the field. The layer has the size of the back buffer, so it
+ * looks exactly like rendering the packets directly.
+ *
+ * @see PacketRenderer
+ */
+
+public class PacketLayer implements Disposable
+{
+    private final SpriteBatch batch;
+    private final TextureRegion pixel;
+    private final OrthographicCamera camera = new OrthographicCamera(); //maps game coordinates onto the layer
+    private FrameBuffer frameBuffer;
+
+    /**
+     * Creates an empty layer with the size of the back buffer.
+     *
+     * @param batch the batch used to render packets into the layer; must not be active while the layer is changed
+     * @param pixel a white texture region, see {@link PacketRenderer}
+     */
+    public PacketLayer(SpriteBatch batch, TextureRegion pixel)
+    {
+        this.batch = batch;
+        this.pixel = pixel;
+        camera.setToOrtho(false, PacketrisGame.GAME_WIDTH, PacketrisGame.GAME_HEIGHT);
+        resize(Gdx.graphics.getBackBufferWidth(), Gdx.graphics.getBackBufferHeight());
+    }
+
+    /**
+     * Recreates the frame buffer if the size of the back buffer changed. The layer is empty afterwards,
+     * so it must be rebuilt.
+     *
+     * @param width  the new width of the back buffer in pixels
+     * @param height the new height of the back buffer in pixels
+     * @return true if the frame buffer has been recreated; false if the size did not change
+     */
+    public boolean resize(int width, int height)
+    {
+        if (frameBuffer != null)
+        {
+            if (frameBuffer.getWidth() == width && frameBuffer.getHeight() == height)
+                return false;
+            frameBuffer.dispose();
+        }
+        frameBuffer = FrameBuffer.createFrameBuffer(Pixmap.Format.RGBA8888, width, height, false);
+        frameBuffer.getColorBufferTexture().setFilter(Texture.TextureFilter.Nearest, Texture.TextureFilter.Nearest);
+        clear();
+        return true;
+    }
+
+    /**
+     * Renders a packet into the layer. Call this once when a packet lands or turns red.
+     *
+     * @param p the packet
+     */
+    public void add(Packet p)
+    {
+        frameBuffer.begin();
+        begin();
+        renderPacket(p);
+        end();
+        frameBuffer.end();
+    }
+
+    /**
+     * Clears the layer and renders all packets again that do not move anymore or are red.
+     * Needed after the content of the frame buffer got lost, e.g. after the OpenGL context has been recreated.
+     *
+     * @param packets all packets of the game
+     */
+    public void rebuild(List<Packet> packets)
+    {
+        frameBuffer.begin();
+        clearBuffer();
+        begin();
+        for (int i = 0; i < packets.size(); ++i)
+        {
+            Packet p = packets.get(i);
+            if (!p.isMoving() || p.isRed())
+                renderPacket(p);
+        }
+        end();
+        frameBuffer.end();
+    }
+
+    /**
+     * Removes all packets from the layer.
+     */
+    public void clear()
+    {
+        frameBuffer.begin();
+        clearBuffer();
+        frameBuffer.end();
+    }
+
+    /**
+     * Draws the layer over the whole game area. The batch must have been started with the game camera.
+     *
+     * @param opacity the opacity of the packets
+     */
+    public void draw(float opacity)
+    {
+        batch.setColor(1, 1, 1, opacity);
+        Texture texture = frameBuffer.getColorBufferTexture();
+        //frame buffer textures are upside down
+        batch.draw(texture, 0, 0, PacketrisGame.GAME_WIDTH, PacketrisGame.GAME_HEIGHT,
+                0, 0, texture.getWidth(), texture.getHeight(), false, true);
+    }
+
+    private void clearBuffer()
+    {
+        Gdx.gl.glClearColor(0, 0, 0, 0);
+        Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
+    }
+
+    private void begin()
+    {
+        batch.setProjectionMatrix(camera.combined);
+        batch.begin();
+    }
+
+    private void renderPacket(Packet p)
+    {
+        PacketRenderer.render(p, batch, pixel, 1, 1);
+    }
+
+    private void end()
+    {
+        batch.end();
+    }
+
+    @Override
+    public void dispose()
+    {
+        frameBuffer.dispose();
+    }
+}
@@ -0,0 +1,76 @@
+package com.coaxial.packetris.elements;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.coaxial.packetris.GameScreen;
+import com.coaxial.packetris.util.BatchShapes;
+
+/**
+ * Renders packets using libgdx. Kept apart from {@link Packet} so that the game logic does not depend on any
+ * graphics classes.
+ */
+
+public class PacketRenderer
+{
+    public static final Color CARDBOARD = new Color(0.80f, 0.52f, 0.25f, 1); //fill color of packets
+
+    /**
+     * Renders a packet with a batch by stretching a white texture region, so that packets can be drawn in the same
+     * batch pass as all other elements. Fills out every block with the cardboard color (red if the packet
+     * is red) and outlines the boundaries with black lines.
+     *
+     * @param p the packet to render
+     * @param batch the batch to draw with; must have been started
+     * @param pixel a white texture region, see {@link com.coaxial.packetris.UiAtlas#getPixel()}
+     * @param opacity the opacity of the packet
+     * @param alpha progress from the previous to the current simulation tick, used to interpolate the position
+     */
+    public static void render(Packet p, Batch batch, TextureRegion pixel, float opacity, float alpha)
+    {
+        if(p.isRed())
+            batch.setColor(1, 0, 0, opacity);
+        else
+            batch.setColor(CARDBOARD.r, CARDBOARD.g, CARDBOARD.b, opacity);
+        Shape shape = p.getShape();
+        float x = p.getPosXInPixels() + GameScreen.SIDE_SPACE;
+        float y = p.getRenderPosY(alpha);
+        //the merged rectangles and outline segments are precomputed by the shape
+        int[] rects = shape.getFillRects();
+        for (int i = 0; i < rects.length; i += 4)
+            BatchShapes.rect(batch, pixel, x + rects[i] * Packet.BLOCK_SIDE_LENGTH, y + rects[i + 1] * Packet.BLOCK_SIDE_LENGTH,
+                    rects[i + 2] * Packet.BLOCK_SIDE_LENGTH, rects[i + 3] * Packet.BLOCK_SIDE_LENGTH);
+        batch.setColor(0, 0, 0, opacity);
+        int[] outline = shape.getOutline();
+        for (int i = 0; i < outline.length; i += 4)
+            BatchShapes.line(batch, pixel, x + outline[i] * Packet.BLOCK_SIDE_LENGTH, y + outline[i + 1] * Packet.BLOCK_SIDE_LENGTH,
+                    x + outline[i + 2] * Packet.BLOCK_SIDE_LENGTH, y + outline[i + 3] * Packet.BLOCK_SIDE_LENGTH);
+    }
+
+    /**
+     * Renders the outline of a shape at a position of the game grid as a translucent ghost, e.g. to hint where
+     * the falling packet should be placed.
+     *
+     * @param shape the shape to render
+     * @param column the column of the shapes left edge
+     * @param row the row of the shapes lowest line
+     * @param batch the batch to draw with; must have been started
+     * @param pixel a white texture region, see {@link com.coaxial.packetris.UiAtlas#getPixel()}
+     * @param opacity the opacity of the ghost
+     */
+    public static void renderGhost(Shape shape, int column, int row, Batch batch, TextureRegion pixel, float opacity)
+    {
+        float x = GameScreen.SIDE_SPACE + column * Packet.BLOCK_SIDE_LENGTH;
+        float y = GameScreen.BOTTOM_SPACE + row * Packet.BLOCK_SIDE_LENGTH;
+        batch.setColor(1, 1, 1, opacity * 0.2f);
+        int[] rects = shape.getFillRects();
+        for (int i = 0; i < rects.length; i += 4)
+            BatchShapes.rect(batch, pixel, x + rects[i] * Packet.BLOCK_SIDE_LENGTH, y + rects[i + 1] * Packet.BLOCK_SIDE_LENGTH,
+                    rects[i + 2] * Packet.BLOCK_SIDE_LENGTH, rects[i + 3] * Packet.BLOCK_SIDE_LENGTH);
+        batch.setColor(1, 1, 1, opacity * 0.8f);
+        int[] outline = shape.getOutline();
+        for (int i = 0; i < outline.length; i += 4)
+            BatchShapes.line(batch, pixel, x + outline[i] * Packet.BLOCK_SIDE_LENGTH, y + outline[i + 1] * Packet.BLOCK_SIDE_LENGTH,
+                    x + outline[i + 2] * Packet.BLOCK_SIDE_LENGTH, y + outline[i + 3] * Packet.BLOCK_SIDE_LENGTH);
+    }
+}
@@ -0,0 +1,279 @@
+package com.coaxial.packetris.elements;
+
+import java.util.Arrays;
+
+/**
+ * Immutable form of a packet, packed into the bits of a single long.
+ * <p>
+ * The block at column {@code x} and row {@code y} (row 0 is the lowest row) is stored at bit {@code y * 8 + x},
+ * so every row of the shape is one byte of the bitmask and can be shifted directly onto a row of the {@link Grid}.
+ * All four rotations of a shape are computed once on creation and linked with each other,
+ * which makes rotating a packet a simple reference change. Each rotation also holds its rendering geometry:
+ * the blocks merged into as few rectangles as possible and the outline merged into straight segments.
+ *
+ * @see Packet
+ */
+
+public final class Shape
+{
+    public static final int MAX_SIDE_LENGTH = 8; //maximum width and height in blocks
+
+    private final long bits;
+    private final int width; //in blocks
+    private final int height;
+    private final int blockCount;
+    private final int[] bottomProfile; //lowest block row of each column; -1 for empty columns
+    private final int[] fillRects; //x, y, width, height of each rectangle covering the blocks, in blocks
+    private final int[] outline; //x1, y1, x2, y2 of each outline segment, in blocks
+    private Shape clockwise; //linked rotations, set up by create
+    private Shape counterClockwise;
+
+    private Shape(long bits, int width, int height)
+    {
+        this.bits = bits;
+        this.width = width;
+        this.height = height;
+        this.blockCount = Long.bitCount(bits);
+        this.bottomProfile = new int[width];
+        for (int x = 0; x < width; ++x)
+        {
+            bottomProfile[x] = -1;
+            for (int y = height - 1; y >= 0; --y)
+                if (isActive(x, y))
+                    bottomProfile[x] = y;
+        }
+        this.fillRects = computeFillRects();
+        this.outline = computeOutline();
+    }
+
+    /**
+     * Covers all blocks with rectangles: starting at each block not covered yet, a rectangle is extended
+     * to the right and then upwards as far as possible.
+     */
+    private int[] computeFillRects()
+    {
+        int[] rects = new int[blockCount * 4];
+        int n = 0;
+        long covered = 0;
+        for (int y = 0; y < height; ++y)
+            for (int x = 0; x < width; ++x)
+            {
+                if (!isActive(x, y) || (covered & (1L << bitIndex(x, y))) != 0)
+                    continue;
+                int w = 1;
+                while (x + w < width && isActive(x + w, y) && (covered & (1L << bitIndex(x + w, y))) == 0)
+                    w++;
+                long rowMask = ((1L << w) - 1) << x;
+                int h = 1;
+                while (y + h < height && (getRowMask(y + h) & rowMask) == rowMask
+                        && (covered >>> ((y + h) * MAX_SIDE_LENGTH) & rowMask) == 0)
+                    h++;
+                for (int j = y; j < y + h; ++j)
+                    covered |= rowMask << (j * MAX_SIDE_LENGTH);
+                rects[n++] = x;
+                rects[n++] = y;
+                rects[n++] = w;
+                rects[n++] = h;
+            }
+        return Arrays.copyOf(rects, n);
+    }
+
+    /**
+     * Collects every block edge that separates a block from an empty cell and joins adjacent edges on
+     * the same line into one segment.
+     */
+    private int[] computeOutline()
+    {
+        int[] segments = new int[blockCount * 16];
+        int n = 0;
+        for (int y = 0; y <= height; ++y) //horizontal edges below row y
+        {
+            int start = -1;
+            for (int x = 0; x <= width; ++x)
+            {
+                boolean edge = x < width && isActive(x, y - 1) != isActive(x, y);
+                if (edge && start < 0)
+                    start = x;
+                else if (!edge && start >= 0)
+                {
+                    n = addSegment(segments, n, start, y, x, y);
+                    start = -1;
+                }
+            }
+        }
+        for (int x = 0; x <= width; ++x) //vertical edges left of column x
+        {
+            int start = -1;
+            for (int y = 0; y <= height; ++y)
+            {
+                boolean edge = y < height && isActive(x - 1, y) != isActive(x, y);
+                if (edge && start < 0)
+                    start = y;
+                else if (!edge && start >= 0)
+                {
+                    n = addSegment(segments, n, x, start, x, y);
+                    start = -1;
+                }
+            }
+        }
+        return Arrays.copyOf(segments, n);
+    }
+
+    private static int addSegment(int[] segments, int n, int x1, int y1, int x2, int y2)
+    {
+        segments[n++] = x1;
+        segments[n++] = y1;
+        segments[n++] = x2;
+        segments[n++] = y2;
+        return n;
+    }
+
+    /**
+     * Creates a shape and all of its rotations.
+     *
+     * @param bits   the blocks of the shape, see class description for the bit layout
+     * @param width  the width of the shape in blocks
+     * @param height the height of the shape in blocks
+     * @return the shape in its unrotated state
+     */
+    public static Shape create(long bits, int width, int height)
+    {
+        if (width < 1 || height < 1 || width > MAX_SIDE_LENGTH || height > MAX_SIDE_LENGTH)
+            throw new IllegalArgumentException("Shape size invalid");
+        Shape[] rotations = new Shape[4];
+        rotations[0] = new Shape(bits, width, height);
+        for (int i = 1; i < 4; ++i)
+            rotations[i] = rotations[i - 1].computeClockwise();
+        for (int i = 0; i < 4; ++i)
+        {
+            rotations[i].clockwise = rotations[(i + 1) % 4];
+            rotations[i].counterClockwise = rotations[(i + 3) % 4];
+        }
+        return rotations[0];
+    }
+
+    /**
+     * Creates a shape and all of its rotations from a boolean array.
+     *
+     * @param shape the blocks of the shape, indexed by [column][row]
+     * @return the shape in its unrotated state
+     */
+    public static Shape create(boolean[][] shape)
+    {
+        long bits = 0;
+        for (int x = 0; x < shape.length; ++x)
+            for (int y = 0; y < shape[x].length; ++y)
+                if (shape[x][y])
+                    bits |= 1L << bitIndex(x, y);
+        return create(bits, shape.length, shape[0].length);
+    }
+
+    /**
+     * Rotates the blocks of this shape clockwise: the block at (x, y) moves to (y, width - 1 - x).
+     *
+     * @return a new, unlinked shape
+     */
+    private Shape computeClockwise()
+    {
+        long rotated = 0;
+        for (long rest = bits; rest != 0; rest &= rest - 1)
+        {
+            int index = Long.numberOfTrailingZeros(rest);
+            int x = index % MAX_SIDE_LENGTH;
+            int y = index / MAX_SIDE_LENGTH;
+            rotated |= 1L << bitIndex(y, width - 1 - x);
+        }
+        return new Shape(rotated, height, width);
+    }
+
+    private static int bitIndex(int x, int y)
+    {
+        return y * MAX_SIDE_LENGTH + x;
+    }
+
+    /**
+     * Returns the precomputed rotation of this shape.
+     *
+     * @param clockwise true for the clockwise rotation; false for the counter-clockwise one
+     * @return the rotated shape
+     */
+    public Shape rotated(boolean clockwise)
+    {
+        return clockwise ? this.clockwise : counterClockwise;
+    }
+
+    /**
+     * Check if there is a block at the specified position.
+     *
+     * @param x column in blocks
+     * @param y row in blocks
+     * @return true if there is a block; false otherwise, also if the position is outside of the shape
+     */
+    public boolean isActive(int x, int y)
+    {
+        if (x < 0 || y < 0 || x >= width || y >= height) return false;
+        return (bits & (1L << bitIndex(x, y))) != 0;
+    }
+
+    /**
+     * Returns the blocks of a row as a bitmask, bit {@code x} representing column {@code x}.
+     *
+     * @param y the row, 0 is the lowest row
+     * @return the bitmask of the row
+     */
+    public int getRowMask(int y)
+    {
+        return (int) (bits >>> (y * MAX_SIDE_LENGTH)) & 0xFF;
+    }
+
+    /**
+     * Returns the row of the lowest block in a column.
+     *
+     * @param x the column
+     * @return the row of the lowest block; -1 if the column is empty
+     */
+    public int getBottom(int x)
+    {
+        return bottomProfile[x];
+    }
+
+    /**
+     * Returns rectangles covering exactly the blocks of this shape, for rendering. The array must not be modified.
+     *
+     * @return x, y, width and height of each rectangle in blocks, one after another
+     */
+    public int[] getFillRects()
+    {
+        return fillRects;
+    }
+
+    /**
+     * Returns the outline of this shape as straight segments, for rendering. The array must not be modified.
+     *
+     * @return x1, y1, x2 and y2 of each segment in blocks, one after another
+     */
+    public int[] getOutline()
+    {
+        return outline;
+    }
+
+    public long getBits()
+    {
+        return bits;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    public int getBlockCount()
+    {
+        return blockCount;
+    }
+}
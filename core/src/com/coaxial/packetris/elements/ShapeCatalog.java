@@ -0,0 +1,273 @@
+package com.coaxial.packetris.elements;
+
+import com.coaxial.packetris.GameType;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * A catalog of all shapes a random packet can have, each with the probability of being generated.
+ * <p>
+ * Random packets used to be generated by trial and error: for a concave packet, a target of 4 to 8 blocks was
+ * chosen, the first block was put at a random column of the lowest row and further blocks were put at random
+ * cells until enough of them were set, rejecting every cell that was occupied, that did not touch a block at its
+ * left, right or lower side or that was floating above an empty cell. Afterwards, empty columns and rows were
+ * trimmed. Since every rejected cell is simply drawn again, each accepted block is uniformly distributed over the
+ * cells that are valid at that moment - so the probability of every resulting shape can be calculated exactly by
+ * following all possible sequences of blocks once. The catalog does this when it is built and samples the shapes
+ * in O(1) with an alias table, handing out shared, immutable {@link Shape} instances.
+ * <p>
+ * Catalogs for the bounding boxes used when spawning packets are built once, when this class is loaded.
+ *
+ * @see Packet#random(int, int, boolean, Random)
+ */
+
+public class ShapeCatalog
+{
+    private static final int MIN_BLOCKS = 4; //block count range of concave packets
+    private static final int MAX_BLOCKS = 8;
+
+    private static final Map<Long, Shape> SHAPES = new HashMap<Long, Shape>(); //shared instances by their bits
+    private static final Map<Integer, ShapeCatalog> CATALOGS = new HashMap<Integer, ShapeCatalog>();
+    private static final ShapeCatalog DEFAULT_CATALOG = mixSpawnBoxes(false);
+    private static final ShapeCatalog SPEED_CATALOG = mixSpawnBoxes(true);
+
+    private final Shape[] shapes;
+    private final double[] probabilities;
+    private final double[] threshold; //alias table: keep shape i if a uniform number is below threshold[i]
+    private final int[] alias; //...and use shape alias[i] otherwise
+
+    private ShapeCatalog(Map<Long, Double> distribution)
+    {
+        int n = distribution.size();
+        shapes = new Shape[n];
+        probabilities = new double[n];
+        double sum = 0;
+        int i = 0;
+        for (Map.Entry<Long, Double> entry : new TreeMap<Long, Double>(distribution).entrySet())
+        {
+            shapes[i] = intern(entry.getKey());
+            probabilities[i] = entry.getValue();
+            sum += entry.getValue();
+            i++;
+        }
+        for (i = 0; i < n; ++i)
+            probabilities[i] /= sum; //remove rounding errors
+
+        //build the alias table (Vose's method)
+        threshold = new double[n];
+        alias = new int[n];
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (i = 0; i < n; ++i)
+        {
+            scaled[i] = probabilities[i] * n;
+            if (scaled[i] < 1)
+                small[smallCount++] = i;
+            else
+                large[largeCount++] = i;
+        }
+        while (smallCount > 0 && largeCount > 0)
+        {
+            int s = small[--smallCount];
+            int l = large[--largeCount];
+            threshold[s] = scaled[s];
+            alias[s] = l;
+            scaled[l] = scaled[l] + scaled[s] - 1;
+            if (scaled[l] < 1)
+                small[smallCount++] = l;
+            else
+                large[largeCount++] = l;
+        }
+        while (largeCount > 0)
+            threshold[large[--largeCount]] = 1;
+        while (smallCount > 0) //only left due to rounding errors
+            threshold[small[--smallCount]] = 1;
+    }
+
+    /**
+     * Returns the catalog of all packets that can be spawned in a game of the given type. This combines the
+     * catalogs of the bounding boxes 2x8, 4x4 and 8x2, each chosen with the same probability.
+     *
+     * @param type the game type; only SPEED games use convex packets
+     * @return the catalog
+     */
+    public static ShapeCatalog forType(GameType type)
+    {
+        return type == GameType.SPEED ? SPEED_CATALOG : DEFAULT_CATALOG;
+    }
+
+    /**
+     * Returns the catalog for a bounding box. Catalogs are built on first use and cached.
+     *
+     * @param xBoundary maximum width in blocks
+     * @param yBoundary maximum height in blocks
+     * @param blockOnly true if only convex shapes should be used; false otherwise
+     * @return the catalog
+     */
+    public static synchronized ShapeCatalog get(int xBoundary, int yBoundary, boolean blockOnly)
+    {
+        if (xBoundary < 1 || yBoundary < 1 || xBoundary > Shape.MAX_SIDE_LENGTH || yBoundary > Shape.MAX_SIDE_LENGTH
+                || (blockOnly ? xBoundary < 2 || yBoundary < 2 : xBoundary * yBoundary < MAX_BLOCKS))
+            throw new IllegalArgumentException("Boundary invalid");
+        int key = (xBoundary * (Shape.MAX_SIDE_LENGTH + 1) + yBoundary) * 2 + (blockOnly ? 1 : 0);
+        ShapeCatalog catalog = CATALOGS.get(key);
+        if (catalog == null)
+        {
+            catalog = new ShapeCatalog(blockOnly ? enumerateConvex(xBoundary, yBoundary)
+                    : enumerateConcave(xBoundary, yBoundary));
+            CATALOGS.put(key, catalog);
+        }
+        return catalog;
+    }
+
+    /**
+     * Draws a random shape with its probability in this catalog.
+     *
+     * @param random the random generator to use
+     * @return a shared shape instance
+     */
+    public Shape sample(Random random)
+    {
+        int i = random.nextInt(shapes.length);
+        return random.nextDouble() < threshold[i] ? shapes[i] : shapes[alias[i]];
+    }
+
+    public int size()
+    {
+        return shapes.length;
+    }
+
+    public Shape getShape(int i)
+    {
+        return shapes[i];
+    }
+
+    public double getProbability(int i)
+    {
+        return probabilities[i];
+    }
+
+    private static ShapeCatalog mixSpawnBoxes(boolean blockOnly)
+    {
+        Map<Long, Double> distribution = new HashMap<Long, Double>();
+        for (int n = 1; n <= 3; ++n)
+        {
+            ShapeCatalog box = get(1 << n, 16 >> n, blockOnly);
+            for (int i = 0; i < box.size(); ++i)
+                add(distribution, box.shapes[i].getBits(), box.probabilities[i] / 3);
+        }
+        return new ShapeCatalog(distribution);
+    }
+
+    /**
+     * Calculates the distribution of convex packets: a block count of 2, 4, 6 or 8 and a width of
+     * 2, 4, ... up to that count are chosen uniformly, both limited to the even part of the bounding box.
+     */
+    private static Map<Long, Double> enumerateConvex(int xBoundary, int yBoundary)
+    {
+        Map<Long, Double> distribution = new HashMap<Long, Double>();
+        for (int target = 2; target <= MAX_BLOCKS; target += 2)
+            for (int k = 1; k <= target / 2; ++k)
+            {
+                int x = Math.min(xBoundary / 2 * 2, 2 * k);
+                int y = Math.min(yBoundary / 2 * 2, target / x);
+                long bits = 0;
+                for (int i = 0; i < x; ++i)
+                    for (int j = 0; j < y; ++j)
+                        bits |= 1L << (j * Shape.MAX_SIDE_LENGTH + i);
+                add(distribution, bits, 1.0 / (MAX_BLOCKS / 2) / (target / 2));
+            }
+        return distribution;
+    }
+
+    /**
+     * Calculates the distribution of concave packets by following every sequence of blocks the trial and error
+     * generation (see class description) can produce, one block at a time.
+     * States are the blocks set so far, using the bit layout of {@link Shape}.
+     */
+    private static Map<Long, Double> enumerateConcave(int xBoundary, int yBoundary)
+    {
+        Map<Long, Double> distribution = new HashMap<Long, Double>();
+        Map<Long, Double> states = new HashMap<Long, Double>();
+        for (int x = 0; x < xBoundary; ++x) //the first block is put at a random column of the lowest row
+            add(states, 1L << x, 1.0 / xBoundary);
+        long[] candidates = new long[Shape.MAX_SIDE_LENGTH * Shape.MAX_SIDE_LENGTH];
+
+        for (int blocks = 1; ; ++blocks)
+        {
+            if (blocks >= MIN_BLOCKS) //every block count of the range is chosen as target with the same probability
+                for (Map.Entry<Long, Double> state : states.entrySet())
+                    add(distribution, trim(state.getKey()), state.getValue() / (MAX_BLOCKS - MIN_BLOCKS + 1));
+            if (blocks == MAX_BLOCKS)
+                return distribution;
+
+            Map<Long, Double> next = new HashMap<Long, Double>();
+            for (Map.Entry<Long, Double> state : states.entrySet())
+            {
+                long bits = state.getKey();
+                int n = 0;
+                for (int y = 0; y < yBoundary; ++y)
+                    for (int x = 0; x < xBoundary; ++x)
+                    {
+                        long cell = 1L << (y * Shape.MAX_SIDE_LENGTH + x);
+                        if ((bits & cell) != 0)
+                            continue;
+                        boolean valid = y == 0
+                                ? (x > 0 && (bits & cell >>> 1) != 0) || (x < xBoundary - 1 && (bits & cell << 1) != 0)
+                                : (bits & cell >>> Shape.MAX_SIDE_LENGTH) != 0; //needs the block below
+                        if (valid)
+                            candidates[n++] = cell;
+                    }
+                for (int i = 0; i < n; ++i)
+                    add(next, bits | candidates[i], state.getValue() / n);
+            }
+            states = next;
+        }
+    }
+
+    /**
+     * Removes empty columns at the left side. Rows never have to be moved since the lowest row is always used.
+     */
+    private static long trim(long bits)
+    {
+        long columns = 0; //union of all rows
+        for (long rest = bits; rest != 0; rest >>>= Shape.MAX_SIDE_LENGTH)
+            columns |= rest & 0xFF;
+        return bits >>> Long.numberOfTrailingZeros(columns);
+    }
+
+    private static void add(Map<Long, Double> distribution, long bits, double probability)
+    {
+        Double old = distribution.get(bits);
+        distribution.put(bits, old == null ? probability : old + probability);
+    }
+
+    /**
+     * Returns the shared shape instance for the given bits, creating it on first use.
+     * The bits must be trimmed to the lower left corner, so they define the width and height of the shape.
+     */
+    private static Shape intern(long bits)
+    {
+        Shape shape = SHAPES.get(bits);
+        if (shape == null)
+        {
+            int width = 0;
+            int height = 0;
+            for (long rest = bits; rest != 0; rest &= rest - 1)
+            {
+                int index = Long.numberOfTrailingZeros(rest);
+                width = Math.max(width, index % Shape.MAX_SIDE_LENGTH + 1);
+                height = Math.max(height, index / Shape.MAX_SIDE_LENGTH + 1);
+            }
+            shape = Shape.create(bits, width, height);
+            SHAPES.put(bits, shape);
+        }
+        return shape;
+    }
+}
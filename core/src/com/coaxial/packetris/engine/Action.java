@@ -0,0 +1,12 @@
+package com.coaxial.packetris.engine;
+
+/**
+ * The actions a player can perform on the currently falling packet.
+ *
+ * @see GameEngine
+ */
+
+public enum Action
+{
+    NONE, MOVE_LEFT, MOVE_RIGHT, ROTATE_LEFT, ROTATE_RIGHT
+}
@@ -0,0 +1,245 @@
+package com.coaxial.packetris.engine;
+
+import com.coaxial.packetris.GameType;
+import com.coaxial.packetris.elements.Grid;
+import com.coaxial.packetris.elements.Shape;
+import com.coaxial.packetris.util.SplitRandom;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Plays many independent game rounds in lockstep, e.g. to train or evaluate placement policies.
+ * <p>
+ * Every step places the falling packet of each round with {@link GameEngine#dropAt(int, int)}, so a decision is
+ * a column and a rotation instead of a sequence of moves. Actions, rewards and observations are exchanged
+ * through flat primitive arrays that are allocated once; the rounds are partitioned into contiguous chunks that
+ * are stepped in parallel by a fork-join pool, reusing the same tasks in every step. Finished rounds are started
+ * again right away with the next seed of their environment, so every environment always has a running round.
+ * Apart from a small node newer JDKs allocate when the calling thread waits for the pool, stepping allocates
+ * nothing.
+ * <p>
+ * An instance must not be used by more than one thread at once.
+ *
+ * @see GameEngine
+ */
+
+public class BatchEnvironment
+{
+    public static final int ACTIONS = 4 * Grid.COLUMNS; //action = rotation * COLUMNS + column
+    public static final int BOARD_SIZE = Grid.ROWS * Grid.COLUMNS;
+    public static final int SHAPE_SIZE = Shape.MAX_SIDE_LENGTH * Shape.MAX_SIDE_LENGTH;
+    public static final int OBSERVATION_SIZE = BOARD_SIZE + SHAPE_SIZE;
+    private static final int MIN_CHUNK_SIZE = 64; //smaller chunks cost more to fork than to step
+
+    private final GameEngine[] engines;
+    private final SplitRandom[] seeders; //draw the seed of every round of an environment
+    private final int[] actions;
+    private final float[] rewards;
+    private final boolean[] done;
+    private final byte[] observations;
+    private final ForkJoinPool pool;
+    private final Chunk[] chunks;
+    private final RecursiveAction root = new RecursiveAction()
+    {
+        @Override
+        protected void compute()
+        {
+            invokeAll(chunks);
+        }
+    };
+
+    /**
+     * Creates the environments, stepped by the common fork-join pool.
+     *
+     * @param type the type of all rounds
+     * @param size the amount of environments
+     */
+    public BatchEnvironment(GameType type, int size)
+    {
+        this(type, size, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates the environments. Every environment has a running round with a random seed until
+     * {@link #reset(long[])} is called.
+     *
+     * @param type the type of all rounds
+     * @param size the amount of environments
+     * @param pool the pool stepping the environments
+     */
+    public BatchEnvironment(GameType type, int size, ForkJoinPool pool)
+    {
+        if (size < 1)
+            throw new IllegalArgumentException("Size must be positive");
+        this.pool = pool;
+        engines = new GameEngine[size];
+        seeders = new SplitRandom[size];
+        actions = new int[size];
+        rewards = new float[size];
+        done = new boolean[size];
+        observations = new byte[size * OBSERVATION_SIZE];
+        for (int i = 0; i < size; ++i)
+        {
+            seeders[i] = new SplitRandom(SplitRandom.newSeed());
+            engines[i] = new GameEngine(type, null, seeders[i].nextLong());
+            engines[i].setKeepPlacedPackets(false);
+        }
+
+        int count = Math.max(1, Math.min(pool.getParallelism() * 4, size / MIN_CHUNK_SIZE));
+        chunks = new Chunk[count];
+        for (int i = 0; i < count; ++i)
+            chunks[i] = new Chunk(i * size / count, (i + 1) * size / count);
+        run(false);
+    }
+
+    /**
+     * Starts a new round in every environment. The seed of an environment determines all of its following rounds,
+     * so the same seeds and actions always result in the same rewards and observations.
+     *
+     * @param seeds one seed per environment
+     */
+    public void reset(long[] seeds)
+    {
+        if (seeds.length != engines.length)
+            throw new IllegalArgumentException("Expected " + engines.length + " seeds");
+        for (int i = 0; i < engines.length; ++i)
+        {
+            seeders[i].setSeed(seeds[i]);
+            engines[i].reset(seeders[i].nextLong());
+            rewards[i] = 0;
+            done[i] = false;
+        }
+        run(false);
+    }
+
+    /**
+     * Places the falling packet of every environment. Afterwards, {@link #getRewards()} contains the points earned,
+     * {@link #getDone()} marks the rounds that ended and {@link #getObservations()} contains the state of the
+     * following decision - for ended rounds the first decision of their next round.
+     *
+     * @param actions one action per environment, {@code rotation * COLUMNS + column}; see {@link #ACTIONS}
+     */
+    public void step(int[] actions)
+    {
+        if (actions.length != engines.length)
+            throw new IllegalArgumentException("Expected " + engines.length + " actions");
+        System.arraycopy(actions, 0, this.actions, 0, actions.length);
+        run(true);
+    }
+
+    private void run(boolean step)
+    {
+        for (Chunk chunk : chunks)
+        {
+            chunk.step = step;
+            chunk.reinitialize();
+        }
+        if (chunks.length == 1)
+            chunks[0].compute();
+        else
+        {
+            root.reinitialize();
+            pool.invoke(root);
+        }
+    }
+
+    /**
+     * Steps a range of environments and writes their observations.
+     */
+    private class Chunk extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private boolean step;
+
+        Chunk(int from, int to)
+        {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            for (int i = from; i < to; ++i)
+            {
+                GameEngine engine = engines[i];
+                if (step)
+                {
+                    int action = actions[i];
+                    if (action < 0 || action >= ACTIONS)
+                        action = 0;
+                    rewards[i] = engine.dropAt(action % Grid.COLUMNS, action / Grid.COLUMNS);
+                    done[i] = engine.isGameOver();
+                    if (done[i])
+                        engine.reset(seeders[i].nextLong());
+                }
+                observe(engine, i * OBSERVATION_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Writes the observation of an environment: one byte per cell of the field, row by row from the bottom left,
+     * 1 if occupied; followed by the cells of the falling packets shape in its spawn rotation, padded to
+     * {@link Shape#MAX_SIDE_LENGTH} in both directions.
+     */
+    private void observe(GameEngine engine, int offset)
+    {
+        Grid grid = engine.getGrid();
+        for (int row = 0; row < Grid.ROWS; ++row)
+        {
+            int mask = grid.rowAt(row);
+            for (int column = 0; column < Grid.COLUMNS; ++column)
+                observations[offset++] = (byte) (mask >>> column & 1);
+        }
+        Shape shape = engine.getCurrentPacket().getShape();
+        for (int y = 0; y < Shape.MAX_SIDE_LENGTH; ++y)
+        {
+            int mask = y < shape.getHeight() ? shape.getRowMask(y) : 0;
+            for (int x = 0; x < Shape.MAX_SIDE_LENGTH; ++x)
+                observations[offset++] = (byte) (mask >>> x & 1);
+        }
+    }
+
+    public int size()
+    {
+        return engines.length;
+    }
+
+    /**
+     * @return the points earned by every environment in the last step; shared, overwritten by the next step
+     */
+    public float[] getRewards()
+    {
+        return rewards;
+    }
+
+    /**
+     * @return whether the round of every environment ended in the last step; shared, overwritten by the next step
+     */
+    public boolean[] getDone()
+    {
+        return done;
+    }
+
+    /**
+     * @return {@link #OBSERVATION_SIZE} bytes per environment; shared, overwritten by the next step
+     */
+    public byte[] getObservations()
+    {
+        return observations;
+    }
+
+    /**
+     * @param i the index of the environment
+     * @return the engine running the current round of the environment
+     */
+    public GameEngine getEngine(int i)
+    {
+        return engines[i];
+    }
+}
@@ -0,0 +1,395 @@
+package com.coaxial.packetris.engine;
+
+import com.coaxial.packetris.GameType;
+import com.coaxial.packetris.elements.Grid;
+import com.coaxial.packetris.elements.Packet;
+import com.coaxial.packetris.elements.Shape;
+import com.coaxial.packetris.util.SplitRandom;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Contains all rules of a single game round: spawning, moving and rotating packets, collisions, scoring
+ * and game over detection.
+ * <p>
+ * The engine does not depend on libgdx, so it can run without any graphics context - e.g. for simulations,
+ * bots and benchmarks. {@link com.coaxial.packetris.GameScreen} drives an instance by calling
+ * {@link #step(Action, float)} once per frame and renders its state.
+ * Time is simulated in fixed ticks of {@link #TICK_TIME} seconds, independent of the frame rate.
+ *
+ * @see Action
+ */
+
+public class GameEngine
+{
+    public static final int TICKS_PER_SECOND = 120; //simulation steps per second
+    public static final float TICK_TIME = 1f / TICKS_PER_SECOND;
+    public static final float INITIAL_WAITING = 2; //waiting before the first packet starts to fall, in seconds
+    private static final float MAX_FRAME_TIME = 0.25f; //longer frames are simulated as if they took this long
+
+    /**
+     * Receives events of an engine, e.g. to play sounds or show the earned points.
+     */
+    public interface Listener
+    {
+        /**
+         * Called when a packet stopped moving inside the main field.
+         *
+         * @param p      the placed packet
+         * @param points the points earned with this packet
+         */
+        void packetPlaced(Packet p, int points);
+
+        /**
+         * Called when a packet landed without fitting into the main field, which ends the game. This happens
+         * right after spawning if the packet cannot come to rest inside the field anywhere, see
+         * {@link #setEndTrappedRounds(boolean)}.
+         *
+         * @param p the packet that did not fit
+         */
+        void gameOver(Packet p);
+    }
+
+    private final GameType type;
+    private final Listener listener;
+    private final Random random;
+    private final PacketSequence sequence; //draws the packets from the random generator
+    //contains all currently existing packets; sized for a full field of the smallest packets (2 blocks) and the
+    //falling one, so that spawning never has to grow the list
+    private final List<Packet> packets = new ArrayList<Packet>(Grid.COLUMNS * Grid.ROWS / 2 + 1);
+    private final Grid grid = new Grid(); //occupancy of all packets that stopped moving, used for collision checks
+
+    private int score = 0;
+    private int placedPackets = 0;
+    private boolean gameOver = false;
+    private float initialWaiting = INITIAL_WAITING;
+    private float accumulator = 0; //frame time not yet consumed by simulation ticks
+    private long ticks = 0; //amount of ticks simulated so far
+    private boolean keepPlacedPackets = true; //false if only the falling packet is kept, see setKeepPlacedPackets
+    private boolean endTrappedRounds = true; //true if a packet without any place inside the field ends the round
+    private final Reachability reachability = new Reachability(); //checks every spawned packet for a place
+
+    /**
+     * Creates a new game round and spawns the first packet.
+     *
+     * @param type     the type of this game round
+     * @param listener receives the events of this round; may be null
+     */
+    public GameEngine(GameType type, Listener listener)
+    {
+        this(type, listener, SplitRandom.newSeed());
+    }
+
+    /**
+     * Creates a new game round and spawns the first packet. Rounds with the same seed and the same input
+     * spawn the same packets at the same positions.
+     *
+     * @param type     the type of this game round
+     * @param listener receives the events of this round; may be null
+     * @param seed     the seed of the random generator owned by this round
+     */
+    public GameEngine(GameType type, Listener listener, long seed)
+    {
+        this(type, listener, new SplitRandom(seed));
+    }
+
+    /**
+     * Creates a new game round and spawns the first packet.
+     *
+     * @param type     the type of this game round
+     * @param listener receives the events of this round; may be null
+     * @param random   the random generator used for packet generation and spawn positions; must not be shared
+     *                 with another thread
+     */
+    public GameEngine(GameType type, Listener listener, Random random)
+    {
+        this.type = type;
+        this.listener = listener;
+        this.random = random;
+        sequence = new PacketSequence(type, random);
+        spawnPacket();
+    }
+
+    /**
+     * Applies the player input and advances the game by the time since the last step.
+     * The time is accumulated and consumed in fixed ticks; a remainder is kept for the next step.
+     *
+     * @param input the action of the player in this step
+     * @param delta the time since the last step in seconds
+     */
+    public void step(Action input, float delta)
+    {
+        apply(input);
+        if (gameOver)
+            return;
+        accumulator += Math.min(delta, MAX_FRAME_TIME);
+        while (!gameOver && accumulator >= TICK_TIME)
+        {
+            accumulator -= TICK_TIME;
+            tick();
+        }
+    }
+
+    /**
+     * Performs an action on the currently falling packet. Actions are ignored while waiting for the first packet
+     * and after the game is over.
+     *
+     * @param action the action
+     */
+    public void apply(Action action)
+    {
+        if (gameOver || initialWaiting > 0)
+            return;
+        Packet p = getCurrentPacket();
+        switch (action)
+        {
+            case MOVE_LEFT:
+                p.setCheckedPosX(p.getPosX() - 1, grid);
+                break;
+            case MOVE_RIGHT:
+                p.setCheckedPosX(p.getPosX() + 1, grid);
+                break;
+            case ROTATE_LEFT:
+                p.rotate(false, grid);
+                break;
+            case ROTATE_RIGHT:
+                p.rotate(true, grid);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Advances the game by one fixed simulation tick: moves the falling packet down and handles its landing.
+     * The landing row is known before moving, so the packet is stopped exactly there - it can never skip
+     * a collision, no matter how far it moves in one tick.
+     */
+    public void tick()
+    {
+        if (gameOver)
+            return;
+        ticks++;
+        Packet p = getCurrentPacket();
+
+        //move packet if initial waiting is over
+        if ((initialWaiting -= TICK_TIME) > 0)
+            return;
+        p.moveDown(type.getSpeed() / (float) TICKS_PER_SECOND);
+
+        //the landing row is cached by the packet until it is moved or rotated, so this is a simple comparison
+        if (p.getPosY() <= p.getLandingPosY(grid)) //if packet hits the ground or any other packet
+            land(p);
+        //if p hits nothing do nothing
+    }
+
+    /**
+     * Places the falling packet in the given column and rotation directly on its landing row, without
+     * simulating the fall, e.g. for bots and training environments that decide where a packet goes instead of
+     * how it is moved. The rotation counts from the spawn orientation and any earlier moves or rotations of the
+     * packet are discarded, so the result only depends on the arguments and the placed packets.
+     * A new packet is spawned afterwards unless the game is over.
+     *
+     * @param column   the column of the packets left edge; clamped so that the packet stays inside the field
+     * @param rotation the amount of clockwise rotations, 0 to 3
+     * @return the points earned with this packet; 0 if it did not fit and the game is over
+     */
+    public int dropAt(int column, int rotation)
+    {
+        if (gameOver)
+            return 0;
+        initialWaiting = 0;
+        Shape shape = sequence.getShape();
+        for (int i = 0; i < rotation; ++i)
+            shape = shape.rotated(true);
+        //back above the field, where the packet spawned, so nothing is in the way of the rotation and the column
+        Packet p = getCurrentPacket();
+        p.reset(shape);
+        p.setPosX(Math.max(0, Math.min(Grid.COLUMNS - shape.getWidth(), column)));
+        p.setPosY(Layout.GAME_HEIGHT);
+        return land(p);
+    }
+
+    /**
+     * Stops a packet on its landing row, then either places it and spawns the next one or ends the game if
+     * it does not fit into the field.
+     *
+     * @param p the falling packet
+     * @return the points earned with this packet; 0 if the game is over
+     */
+    private int land(Packet p)
+    {
+        //correct position to the line of the game grid where the packet should be placed
+        p.setPosY(p.getLandingPosY(grid));
+
+        if (p.getRow() + p.getHeightInBlocks() > Grid.ROWS) //if packet does not fit into the field
+        {
+            gameOver = true;
+            p.setRed(); //mark not fitting packet red
+            if (listener != null)
+                listener.gameOver(p);
+            return 0;
+        }
+        //if packet fits into field, stop moving the packet and add points to score
+        //100 points per block + 10 per downwards touching surface (ground or other packets)
+        int points = p.setMoving(false) + grid.countTouches(p) * 10;
+        score += points;
+        placedPackets++;
+        grid.add(p);
+        if (listener != null)
+            listener.packetPlaced(p, points);
+        spawnPacket();
+        return points;
+    }
+
+    /**
+     * Starts a new round with the same type and listener, reusing this engine and its grid.
+     * Equivalent to creating a new engine with this seed, if the engine owns a {@link SplitRandom}.
+     *
+     * @param seed the seed of the new round
+     */
+    public void reset(long seed)
+    {
+        random.setSeed(seed);
+        grid.clear();
+        if (keepPlacedPackets)
+            packets.clear();
+        score = 0;
+        placedPackets = 0;
+        gameOver = false;
+        initialWaiting = INITIAL_WAITING;
+        accumulator = 0;
+        ticks = 0;
+        spawnPacket();
+    }
+
+    /**
+     * Spawn a new packet by adding a new random packet to the packets list.
+     * Respects the game type when it comes to packet generation.
+     * Sets up the new packet to fall down at a random position.
+     */
+    private void spawnPacket()
+    {
+        sequence.next();
+        Shape shape = sequence.getShape();
+        Packet p;
+        if (keepPlacedPackets || packets.isEmpty())
+        {
+            p = new Packet(shape);
+            packets.add(p);
+        } else
+        {
+            p = getCurrentPacket();
+            p.reset(shape);
+        }
+        p.setPosX(sequence.getColumn());
+        p.setPosY(Layout.GAME_HEIGHT);
+
+        //a packet that sticks out wherever it lands is dropped right away instead of letting the player try
+        if (endTrappedRounds && !reachability.canPlace(grid, p))
+            land(p);
+    }
+
+    /**
+     * Returns the progress from the previous to the next simulation tick, used to interpolate rendering.
+     *
+     * @return a value between 0 (inclusive) and 1 (exclusive)
+     */
+    public float getAlpha()
+    {
+        return accumulator / TICK_TIME;
+    }
+
+    /**
+     * Sets whether placed packets are kept in {@link #getPackets()}. Renderers need them, simulations do not:
+     * without them, a single packet instance is reused for every spawn, so a round allocates nothing.
+     * The placed packets passed to the listener are reused as well then. Does not change the packets spawned.
+     *
+     * @param keepPlacedPackets true to keep all packets (the default); false to keep only the falling one
+     */
+    public void setKeepPlacedPackets(boolean keepPlacedPackets)
+    {
+        this.keepPlacedPackets = keepPlacedPackets;
+        if (!keepPlacedPackets && packets.size() > 1)
+        {
+            Packet current = getCurrentPacket();
+            packets.clear();
+            packets.add(current);
+        }
+    }
+
+    /**
+     * Sets whether a round ends as soon as a packet spawns that cannot come to rest inside the field anywhere.
+     * The packet is dropped straight down then, so it sticks out like it would after falling. Otherwise, the player
+     * keeps control until the packet lands. Only rounds recorded before this rule existed turn it off.
+     *
+     * @param endTrappedRounds true to end trapped rounds right away (the default); false to let the packet fall
+     */
+    public void setEndTrappedRounds(boolean endTrappedRounds)
+    {
+        this.endTrappedRounds = endTrappedRounds;
+    }
+
+    public Packet getCurrentPacket()
+    {
+        return packets.get(packets.size() - 1);
+    }
+
+    public List<Packet> getPackets()
+    {
+        return packets;
+    }
+
+    public Grid getGrid()
+    {
+        return grid;
+    }
+
+    public GameType getType()
+    {
+        return type;
+    }
+
+    public int getScore()
+    {
+        return score;
+    }
+
+    public int getPlacedPackets()
+    {
+        return placedPackets;
+    }
+
+    /**
+     * @return the share of the main field covered by settled packets, between 0 and 1
+     */
+    public float getFillRatio()
+    {
+        int blocks = 0;
+        for (int row = 0; row < Grid.ROWS; ++row)
+            blocks += Integer.bitCount(grid.rowAt(row));
+        return blocks / (float) (Grid.COLUMNS * Grid.ROWS);
+    }
+
+    public boolean isGameOver()
+    {
+        return gameOver;
+    }
+
+    /**
+     * Returns the time left until the first packet starts to fall.
+     *
+     * @return the time in seconds; 0 if the packets are already falling
+     */
+    public float getInitialWaiting()
+    {
+        return Math.max(0, initialWaiting);
+    }
+
+    public long getTicks()
+    {
+        return ticks;
+    }
+}
@@ -0,0 +1,25 @@
+package com.coaxial.packetris.engine;
+
+/**
+ * Provides the actions of a round instead of the player, e.g. a script driving the game while it is profiled.
+ *
+ * @see com.coaxial.packetris.PacketrisGame#setAutoplay(com.coaxial.packetris.GameType, InputSource)
+ */
+
+public interface InputSource
+{
+    /**
+     * Called when a new round starts.
+     *
+     * @param engine the engine of the round
+     */
+    void start(GameEngine engine);
+
+    /**
+     * Called once per frame while the round is running, before the engine is stepped.
+     *
+     * @param engine the engine of the round
+     * @return the action to apply in this frame; {@link Action#NONE} for none
+     */
+    Action next(GameEngine engine);
+}
@@ -0,0 +1,14 @@
+package com.coaxial.packetris.engine;
+
+/**
+ * Dimensions of the virtual screen and the main field, in pixels. The screens refer to these, so the engine
+ * and the packets it moves read them without loading any libgdx class.
+ */
+
+public class Layout
+{
+    public static final int GAME_WIDTH = 960;
+    public static final int GAME_HEIGHT = 1600;
+    public static final int BOTTOM_SPACE = 200; //space under the main field
+    public static final int SIDE_SPACE = 64; //space left and right of the main field
+}
@@ -0,0 +1,59 @@
+package com.coaxial.packetris.engine;
+
+import com.coaxial.packetris.GameType;
+import com.coaxial.packetris.elements.Grid;
+import com.coaxial.packetris.elements.Shape;
+import com.coaxial.packetris.elements.ShapeCatalog;
+
+import java.util.Random;
+
+/**
+ * Draws the packets of a round from its random generator: the shape of every packet and the column it spawns at.
+ * <p>
+ * The packets of a round only depend on its seed, which {@link PackingSolver} relies on to search the best score
+ * of a round afterwards. Both the engine and the solver draw the packets through this class, so they always agree
+ * on the order of the random numbers.
+ */
+
+class PacketSequence
+{
+    private final ShapeCatalog catalog;
+    private final Random random;
+    private Shape shape;
+    private int column;
+
+    /**
+     * @param type   the game type, which determines the shapes
+     * @param random the random generator of the round
+     */
+    PacketSequence(GameType type, Random random)
+    {
+        catalog = ShapeCatalog.forType(type);
+        this.random = random;
+    }
+
+    /**
+     * Draws the next packet.
+     */
+    void next()
+    {
+        shape = catalog.sample(random);
+        column = random.nextInt(Grid.COLUMNS - shape.getWidth() + 1);
+    }
+
+    /**
+     * @return the shape of the last packet drawn, in spawn rotation
+     */
+    Shape getShape()
+    {
+        return shape;
+    }
+
+    /**
+     * @return the column the last packet drawn spawns at
+     */
+    int getColumn()
+    {
+        return column;
+    }
+}
@@ -0,0 +1,370 @@
+package com.coaxial.packetris.engine;
+
+import com.coaxial.packetris.GameType;
+import com.coaxial.packetris.elements.Grid;
+import com.coaxial.packetris.elements.Shape;
+import com.coaxial.packetris.util.SplitRandom;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Searches the best score achievable with the packet sequence of a round, to rate the round against it.
+ * <p>
+ * The packets of a round only depend on its seed, not on how they are placed, so the whole sequence is known
+ * offline. A beam search places the packets one after another, keeping the best rated boards of every step:
+ * a board is rated by its score minus the cells it wasted below the skyline and its bumpiness. Packets are
+ * dropped from above, so cells below the skyline can never be filled again and every board is fully described by
+ * its skyline - boards with the same skyline after the same packets are equivalent, and only the one with the best
+ * score is kept. The boards of a step are expanded in parallel by a fork-join pool.
+ * <p>
+ * The result is the best score found, a lower bound of the optimum; players sliding packets under overhangs can
+ * exceed it in rare cases. Wider beams find better scores and take proportionally longer.
+ */
+
+public class PackingSolver
+{
+    public static final int DEFAULT_BEAM_WIDTH = 512;
+    private static final int MAX_PLACEMENTS = 4 * Grid.COLUMNS; //every rotation at every column
+    private static final int MAX_PACKETS = Grid.ROWS * Grid.COLUMNS; //no round can place more packets
+    private static final int HOLE_PENALTY = 110; //per wasted cell, about the points a block in it would earn
+    private static final int BUMPINESS_PENALTY = 10; //per row of height difference between neighbouring columns
+    private static final int MIN_CHUNK_SIZE = 32; //boards expanded per task at least
+
+    /**
+     * The result of a search.
+     */
+    public static final class Result
+    {
+        private final int score;
+        private final int placedPackets;
+
+        Result(int score, int placedPackets)
+        {
+            this.score = score;
+            this.placedPackets = placedPackets;
+        }
+
+        /**
+         * @return the best score found
+         */
+        public int getScore()
+        {
+            return score;
+        }
+
+        /**
+         * @return the packets placed to reach the score
+         */
+        public int getPlacedPackets()
+        {
+            return placedPackets;
+        }
+
+        /**
+         * Rates a score against the best one found. A score exceeding it, which is possible in rare cases, is the
+         * best one then.
+         *
+         * @param score the score of a round with the same packets
+         * @return the score in percent of the best one, at most 100
+         */
+        public float getEfficiency(int score)
+        {
+            return score < this.score ? 100f * score / this.score : 100;
+        }
+    }
+
+    /**
+     * The skyline profile of a packet in one rotation.
+     */
+    private static final class Rotation
+    {
+        private final int width;
+        private final int height;
+        private final int blocks;
+        private final int[] bottom; //lowest block per column
+        private final int[] top; //rows up to the highest block per column
+
+        private Rotation(Shape shape)
+        {
+            width = shape.getWidth();
+            height = shape.getHeight();
+            blocks = shape.getBlockCount();
+            bottom = new int[width];
+            top = new int[width];
+            for (int i = 0; i < width; ++i)
+            {
+                bottom[i] = shape.getBottom(i);
+                for (int j = 0; j < height; ++j)
+                    if (shape.isActive(i, j))
+                        top[i] = j + 1;
+            }
+        }
+    }
+
+    private final int beamWidth;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param beamWidth the amount of boards kept per packet
+     * @param pool      the pool expanding the boards in parallel; not null
+     */
+    public PackingSolver(int beamWidth, ForkJoinPool pool)
+    {
+        if (beamWidth < 1)
+            throw new IllegalArgumentException("Beam width must be positive");
+        if (pool == null)
+            throw new IllegalArgumentException("Pool must not be null");
+        this.beamWidth = beamWidth;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the packets a round spawns, drawn by the same {@link PacketSequence} as the engine draws them.
+     *
+     * @param type  the game type
+     * @param seed  the seed of the round
+     * @param count the amount of packets
+     * @return the shapes of the packets in spawn rotation, first one first
+     */
+    public static Shape[] sequence(GameType type, long seed, int count)
+    {
+        PacketSequence sequence = new PacketSequence(type, new SplitRandom(seed));
+        Shape[] shapes = new Shape[count];
+        for (int i = 0; i < count; ++i)
+        {
+            sequence.next();
+            shapes[i] = sequence.getShape();
+        }
+        return shapes;
+    }
+
+    /**
+     * Searches the best score of a round.
+     *
+     * @param type the game type
+     * @param seed the seed of the round, e.g. of its {@link Replay}
+     * @return the result
+     */
+    public Result solve(GameType type, long seed)
+    {
+        return solve(sequence(type, seed, MAX_PACKETS));
+    }
+
+    /**
+     * Searches the best score of a packet sequence. The search ends when a packet does not fit anywhere or the
+     * sequence ends.
+     *
+     * @param shapes the packets in spawn rotation, first one first
+     * @return the result
+     */
+    public Result solve(Shape[] shapes)
+    {
+        final int columns = Grid.COLUMNS;
+        final int capacity = beamWidth * MAX_PLACEMENTS;
+        //the boards of the current step, as skylines
+        final byte[] heights = new byte[beamWidth * columns];
+        final int[] scores = new int[beamWidth];
+        int count = 1;
+        //the boards of the next step, in fixed slots per expanded board
+        final byte[] childHeights = new byte[capacity * columns];
+        final int[] childScores = new int[capacity];
+        final long[] childKeys = new long[capacity]; //skylines, see key
+        final int[] childCounts = new int[beamWidth];
+        //selection
+        long[] table = new long[Integer.highestOneBit(capacity) * 4]; //open addressing, key + 1; 0 if empty
+        int[] entries = new int[table.length]; //index of the board of a key in order
+        long[] order = new long[capacity]; //the distinct boards, as slots; then sorted by rank
+
+        int bestScore = 0;
+        int bestPackets = 0;
+        for (int step = 0; step < shapes.length && count > 0; ++step)
+        {
+            final Rotation[] rotations = rotations(shapes[step]);
+            final int parents = count;
+            Expansion expansion = new Expansion()
+            {
+                @Override
+                void expand(int parent)
+                {
+                    int n = 0;
+                    int slot = parent * MAX_PLACEMENTS;
+                    for (Rotation rotation : rotations)
+                        for (int x = 0; x <= columns - rotation.width; ++x)
+                        {
+                            //landing row from the skyline, like Grid.landingRow from above the field
+                            int landing = 0;
+                            for (int i = 0; i < rotation.width; ++i)
+                                if (rotation.bottom[i] >= 0)
+                                    landing = Math.max(landing, heights[parent * columns + x + i] - rotation.bottom[i]);
+                            if (landing + rotation.height > Grid.ROWS)
+                                continue; //ends the round
+                            int touches = 0;
+                            int target = (slot + n) * columns;
+                            System.arraycopy(heights, parent * columns, childHeights, target, columns);
+                            for (int i = 0; i < rotation.width; ++i)
+                                if (rotation.bottom[i] >= 0)
+                                {
+                                    if (landing + rotation.bottom[i] == heights[parent * columns + x + i])
+                                        touches++;
+                                    childHeights[target + x + i] = (byte) (landing + rotation.top[i]);
+                                }
+                            childScores[slot + n] = scores[parent] + 100 * rotation.blocks + 10 * touches;
+                            childKeys[slot + n] = key(childHeights, target);
+                            n++;
+                        }
+                    childCounts[parent] = n;
+                }
+            };
+            expansion.run(parents);
+
+            //dedupe equivalent skylines, keeping the best score, and rank the rest
+            Arrays.fill(table, 0);
+            int unique = 0;
+            for (int parent = 0; parent < parents; ++parent)
+            {
+                if (childCounts[parent] == 0 && scores[parent] > bestScore)
+                {
+                    bestScore = scores[parent]; //the next packet does not fit anywhere
+                    bestPackets = step;
+                }
+                for (int c = 0; c < childCounts[parent]; ++c)
+                {
+                    int slot = parent * MAX_PLACEMENTS + c;
+                    long key = childKeys[slot];
+                    int h = (int) (mix(key) & (table.length - 1));
+                    while (table[h] != 0 && table[h] != key + 1)
+                        h = (h + 1) & (table.length - 1);
+                    if (table[h] == 0)
+                    {
+                        table[h] = key + 1;
+                        entries[h] = unique;
+                        order[unique++] = slot;
+                    } else if (childScores[slot] > childScores[(int) order[entries[h]]])
+                        order[entries[h]] = slot; //same skyline with a better score
+                }
+            }
+
+            //keep the best ranked boards: sort by descending rank, then slot
+            for (int i = 0; i < unique; ++i)
+            {
+                int slot = (int) order[i];
+                order[i] = (long) -rank(childHeights, slot * columns, childScores[slot]) << 32 | slot;
+            }
+            Arrays.sort(order, 0, unique);
+            count = Math.min(unique, beamWidth);
+            for (int i = 0; i < count; ++i)
+            {
+                int slot = (int) order[i];
+                System.arraycopy(childHeights, slot * columns, heights, i * columns, columns);
+                scores[i] = childScores[slot];
+            }
+        }
+        for (int i = 0; i < count; ++i) //the sequence ended before the field was full
+            if (scores[i] > bestScore)
+            {
+                bestScore = scores[i];
+                bestPackets = shapes.length;
+            }
+        return new Result(bestScore, bestPackets);
+    }
+
+    /**
+     * Expands boards in parallel, split into contiguous chunks.
+     */
+    private abstract class Expansion
+    {
+        abstract void expand(int parent);
+
+        void run(final int parents)
+        {
+            int chunks = Math.max(1, Math.min(pool.getParallelism() * 4, parents / MIN_CHUNK_SIZE));
+            if (chunks == 1)
+            {
+                for (int parent = 0; parent < parents; ++parent)
+                    expand(parent);
+                return;
+            }
+            final RecursiveAction[] tasks = new RecursiveAction[chunks];
+            for (int i = 0; i < chunks; ++i)
+            {
+                final int from = i * parents / chunks;
+                final int to = (i + 1) * parents / chunks;
+                tasks[i] = new RecursiveAction()
+                {
+                    @Override
+                    protected void compute()
+                    {
+                        for (int parent = from; parent < to; ++parent)
+                            expand(parent);
+                    }
+                };
+            }
+            pool.invoke(new RecursiveAction()
+            {
+                @Override
+                protected void compute()
+                {
+                    invokeAll(tasks);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the distinct rotations of a shape
+     */
+    private static Rotation[] rotations(Shape shape)
+    {
+        Shape[] distinct = new Shape[4];
+        int n = 0;
+        Shape rotated = shape;
+        for (int r = 0; r < 4; ++r, rotated = rotated.rotated(true))
+        {
+            boolean known = false;
+            for (int i = 0; i < n; ++i)
+                known |= distinct[i].getBits() == rotated.getBits() && distinct[i].getWidth() == rotated.getWidth();
+            if (!known)
+                distinct[n++] = rotated;
+        }
+        Rotation[] rotations = new Rotation[n];
+        for (int i = 0; i < n; ++i)
+            rotations[i] = new Rotation(distinct[i]);
+        return rotations;
+    }
+
+    /**
+     * Encodes a skyline in base {@code ROWS + 1}, which fits into a long for the field size.
+     */
+    private static long key(byte[] heights, int offset)
+    {
+        long key = 0;
+        for (int i = 0; i < Grid.COLUMNS; ++i)
+            key = key * (Grid.ROWS + 1) + heights[offset + i];
+        return key;
+    }
+
+    private static long mix(long key)
+    {
+        key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        return key ^ (key >>> 33);
+    }
+
+    /**
+     * Rates a board by its score minus the cells it wasted below the skyline and its bumpiness. All boards of a
+     * step contain the same blocks, so the wasted cells follow from the skyline.
+     */
+    private static int rank(byte[] heights, int offset, int score)
+    {
+        int cells = 0;
+        int bumpiness = 0;
+        for (int i = 0; i < Grid.COLUMNS; ++i)
+        {
+            cells += heights[offset + i];
+            if (i > 0)
+                bumpiness += Math.abs(heights[offset + i] - heights[offset + i - 1]);
+        }
+        return score - HOLE_PENALTY * cells - BUMPINESS_PENALTY * bumpiness;
+    }
+}
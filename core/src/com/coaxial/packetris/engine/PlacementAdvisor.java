@@ -0,0 +1,173 @@
+package com.coaxial.packetris.engine;
+
+import com.coaxial.packetris.GameType;
+import com.coaxial.packetris.elements.Grid;
+import com.coaxial.packetris.elements.Packet;
+import com.coaxial.packetris.elements.Shape;
+
+/**
+ * Searches the best placement of the falling packet in the background, to show it as a hint.
+ * <p>
+ * {@link #request(Grid, Packet)} copies the grid and the state of the packet into a snapshot allocated once and
+ * wakes up a background thread, which searches with a single reused {@link PlacementSearch} and cancels the
+ * running search if it is outdated. The thread has the lowest priority and searches on its own, so the hint never
+ * competes with rendering. The result is published to {@link #getHint()}, which never blocks for long, so the
+ * render thread can poll it once per frame. Requesting and polling allocate nothing; only the background thread
+ * allocates the {@link PlacementSearch.Placement} of each finished search. All methods except the search itself are
+ * meant to be called by a single thread, e.g. the render thread.
+ */
+
+public class PlacementAdvisor
+{
+    private static final String TAG = "Hints";
+
+    private final Object lock = new Object(); //guards the snapshot and the hint
+    private final PlacementSearch search;
+    //snapshot of the latest request
+    private final Grid requestedGrid = new Grid();
+    private Shape requestedShape; //null if no search has been requested since the last cancel
+    private int requestedX;
+    private float requestedY;
+    private int requestedVersion; //version of the grid the snapshot has been taken of
+    private volatile int requests = 0; //counts requests and cancels, a search is outdated when it changes
+    //copy of the snapshot searched by the background thread
+    private final Grid searchedGrid = new Grid();
+    private Packet searchedPacket; //created by the first search
+    private int searching = 0; //the request searched, used by the background thread only
+    //the result
+    private PlacementSearch.Placement hint; //null until a search has finished
+    private int hintVersion; //version of the grid the hint has been searched in
+    private boolean disposed = false;
+
+    /**
+     * Starts the background thread.
+     *
+     * @param type      the game type of the rounds to advise
+     * @param lookahead amount of following packets to consider, see {@link PlacementSearch#MAX_LOOKAHEAD}
+     */
+    public PlacementAdvisor(GameType type, int lookahead)
+    {
+        search = new PlacementSearch(type, lookahead, null)
+        {
+            @Override
+            public boolean isCancelled()
+            {
+                return searching != requests;
+            }
+        };
+        Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    searchRequests();
+                }
+                catch (InterruptedException e)
+                {
+                    //disposed
+                }
+            }
+        }, TAG);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY); //the hint must never slow down rendering
+        thread.start();
+    }
+
+    /**
+     * Starts searching the best placement of the falling packet and cancels the previous search. Until the new
+     * search has finished, the hint of the previous one is kept if no packet has been placed in between.
+     * Call when a packet spawns, whenever the player moves or rotates it and whenever it falls to a new
+     * {@link Reachability#level(float)}, since falling can put placements under overhangs out of reach.
+     *
+     * @param grid   the placed packets
+     * @param packet the falling packet
+     */
+    public void request(Grid grid, Packet packet)
+    {
+        synchronized (lock)
+        {
+            requestedGrid.set(grid);
+            requestedShape = packet.getShape();
+            requestedX = packet.getPosX();
+            requestedY = packet.getPosY();
+            requestedVersion = grid.getVersion();
+            requests++;
+            lock.notify();
+        }
+    }
+
+    /**
+     * Cancels the current search and removes its hint, e.g. when the round is over.
+     */
+    public void cancel()
+    {
+        synchronized (lock)
+        {
+            requestedShape = null;
+            hint = null;
+            requests++;
+        }
+    }
+
+    /**
+     * @return the result of the current search, or the previous one while it is running; null if there is none
+     */
+    public PlacementSearch.Placement getHint()
+    {
+        synchronized (lock)
+        {
+            return requestedShape != null && hintVersion == requestedVersion ? hint : null;
+        }
+    }
+
+    /**
+     * Cancels the current search and stops the background thread.
+     */
+    public void dispose()
+    {
+        synchronized (lock)
+        {
+            disposed = true;
+            requests++;
+            lock.notify();
+        }
+    }
+
+    /**
+     * Waits for requests, searches them and publishes the results unless they are outdated, until disposed.
+     */
+    private void searchRequests() throws InterruptedException
+    {
+        while (true)
+        {
+            int version;
+            synchronized (lock)
+            {
+                while (!disposed && (requestedShape == null || searching == requests))
+                    lock.wait();
+                if (disposed)
+                    return;
+                searchedGrid.set(requestedGrid);
+                if (searchedPacket == null)
+                    searchedPacket = new Packet(requestedShape);
+                searchedPacket.reset(requestedShape);
+                searchedPacket.setPosX(requestedX);
+                searchedPacket.setPosY(requestedY);
+                version = requestedVersion;
+                searching = requests;
+            }
+
+            PlacementSearch.Placement result = search.search(searchedGrid, searchedPacket);
+            synchronized (lock)
+            {
+                if (result != null && searching == requests)
+                {
+                    hint = result;
+                    hintVersion = version;
+                }
+            }
+        }
+    }
+}
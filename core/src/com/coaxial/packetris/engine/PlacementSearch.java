@@ -0,0 +1,391 @@
+package com.coaxial.packetris.engine;
+
+import com.coaxial.packetris.GameType;
+import com.coaxial.packetris.elements.Grid;
+import com.coaxial.packetris.elements.Packet;
+import com.coaxial.packetris.elements.Shape;
+import com.coaxial.packetris.elements.ShapeCatalog;
+import com.coaxial.packetris.util.SplitRandom;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Searches the best placement of a falling packet, e.g. for a hint or a computer player.
+ * <p>
+ * Every placement the packet can come to rest at from its current position - found by {@link Reachability} with
+ * the same moving, rotating and collision rules as the player, including sliding under overhangs - is rated by
+ * the points it earns (100 per block and 10 per downward touch, like {@link GameEngine}) minus penalties for
+ * covered holes, the height of the skyline and its bumpiness. The following packets are unknown, so looking ahead
+ * averages the best placements of a few shapes drawn from the {@link ShapeCatalog} of the game type; they spawn
+ * above the field, so they are dropped straight down. Only the best rated placements of every level are expanded.
+ * The top level placements are expanded in parallel if a fork-join pool is given, e.g. by a computer player; the
+ * hints of {@link PlacementAdvisor} deliberately search on a single thread.
+ * <p>
+ * An instance keeps its buffers for the next search, so searches run one after another, e.g. on a background
+ * thread searching in snapshots of the round. After the first search, a search allocates nothing but the
+ * {@link Placement} it returns. A running search can be cancelled from any thread.
+ *
+ * @see PlacementAdvisor
+ */
+
+public class PlacementSearch
+{
+    public static final int MAX_LOOKAHEAD = 2;
+    private static final int MAX_PLACEMENTS = 4 * Grid.COLUMNS; //every rotation at every column
+    private static final int MAX_RESTING = MAX_PLACEMENTS * Grid.ROWS; //every rotation at every cell
+    private static final float HOLE_PENALTY = 120; //per empty cell below the skyline
+    private static final float HEIGHT_PENALTY = 8; //per row of all columns summed up
+    private static final float BUMPINESS_PENALTY = 12; //per row of height difference between neighbouring columns
+    private static final float GAME_OVER_VALUE = -100000; //value of a shape that does not fit anywhere
+    private static final int SAMPLES = 6; //shapes averaged per lookahead level
+    private static final int BEAM = 6; //best placements expanded per lookahead level
+    private static final int TOP_BEAM = 12; //best placements of the falling packet expanded
+    private static final long SAMPLE_SEED = 0x5EED; //the same samples for every search, so hints do not flicker
+
+    /**
+     * A placement of a shape, found by a search.
+     */
+    public static final class Placement
+    {
+        private final Shape shape;
+        private final int column;
+        private final int row;
+        private final int points;
+        private final float value;
+
+        Placement(Shape shape, int column, int row, int points, float value)
+        {
+            this.shape = shape;
+            this.column = column;
+            this.row = row;
+            this.points = points;
+            this.value = value;
+        }
+
+        /**
+         * @return the shape in the rotation of this placement
+         */
+        public Shape getShape()
+        {
+            return shape;
+        }
+
+        public int getColumn()
+        {
+            return column;
+        }
+
+        public int getRow()
+        {
+            return row;
+        }
+
+        /**
+         * @return the points this placement earns
+         */
+        public int getPoints()
+        {
+            return points;
+        }
+
+        /**
+         * @return the rating of this placement including the lookahead; only comparable within a search
+         */
+        public float getValue()
+        {
+            return value;
+        }
+    }
+
+    /**
+     * Placements of one shape with their ratings, reused for every shape of a level. Owned by a single thread.
+     */
+    private static final class Level
+    {
+        private final Grid board = new Grid(); //scratch board to rate or expand a placement
+        private final Shape[] shapes;
+        private final int[] columns;
+        private final int[] rows;
+        private final int[] points;
+        private final float[] values; //immediate ratings, without lookahead
+        private int count;
+
+        private Level(int capacity)
+        {
+            shapes = new Shape[capacity];
+            columns = new int[capacity];
+            rows = new int[capacity];
+            points = new int[capacity];
+            values = new float[capacity];
+        }
+
+        /**
+         * Rates a placement and adds it unless it ends the game.
+         */
+        private void add(Grid grid, Shape shape, int column, int row)
+        {
+            if (row + shape.getHeight() > Grid.ROWS)
+                return;
+            int earned = 100 * shape.getBlockCount() + grid.countTouches(shape, column, row) * 10;
+            board.set(grid);
+            board.add(shape, column, row);
+            shapes[count] = shape;
+            columns[count] = column;
+            rows[count] = row;
+            points[count] = earned;
+            values[count] = earned - penalty(board);
+            count++;
+        }
+
+        /**
+         * Moves the best placements to the front, best first.
+         */
+        private int selectBest(int n)
+        {
+            n = Math.min(n, count);
+            for (int i = 0; i < n; ++i)
+            {
+                int best = i;
+                for (int j = i + 1; j < count; ++j)
+                    if (values[j] > values[best])
+                        best = j;
+                swap(i, best);
+            }
+            return n;
+        }
+
+        private void swap(int i, int j)
+        {
+            Shape shape = shapes[i];
+            shapes[i] = shapes[j];
+            shapes[j] = shape;
+            int column = columns[i];
+            columns[i] = columns[j];
+            columns[j] = column;
+            int row = rows[i];
+            rows[i] = rows[j];
+            rows[j] = row;
+            int earned = points[i];
+            points[i] = points[j];
+            points[j] = earned;
+            float value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+
+    private final int lookahead;
+    private final ForkJoinPool pool; //null to search on the calling thread only
+    private final Shape[][] samples; //shapes of the following packets, per lookahead level
+    private final Reachability reachability = new Reachability();
+    private final Level top = new Level(MAX_RESTING); //placements of the falling packet, also under overhangs
+    private final Expansion[] expansions = new Expansion[TOP_BEAM];
+    private final RecursiveAction root = new RecursiveAction()
+    {
+        @Override
+        protected void compute()
+        {
+            for (int i = 1; i < expanded; ++i)
+                expansions[i].fork();
+            expansions[0].compute();
+            for (int i = expanded - 1; i > 0; --i)
+                expansions[i].join();
+        }
+    };
+    private Grid grid; //the placed packets of the running search
+    private int expanded; //top placements expanded by the running search
+    private volatile boolean cancelled = false;
+
+    /**
+     * Expands a top placement with its own boards.
+     */
+    private class Expansion extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int index;
+        private final Level[] levels = new Level[lookahead];
+        private final Grid board = new Grid();
+        private float value; //points of the top placement plus the expected rating of the following packets
+
+        Expansion(int index)
+        {
+            this.index = index;
+            for (int d = 0; d < lookahead; ++d)
+                levels[d] = new Level(MAX_PLACEMENTS);
+        }
+
+        @Override
+        protected void compute()
+        {
+            board.set(grid);
+            board.add(top.shapes[index], top.columns[index], top.rows[index]);
+            value = top.points[index] + expected(board, lookahead - 1, levels);
+        }
+    }
+
+    /**
+     * Creates a search that can be run for any number of rounds, one after another.
+     *
+     * @param type      the game type, which determines the shapes of following packets
+     * @param lookahead amount of following packets to consider, 0 to {@link #MAX_LOOKAHEAD}
+     * @param pool      the pool expanding the placements in parallel; null to search on the calling thread only
+     */
+    public PlacementSearch(GameType type, int lookahead, ForkJoinPool pool)
+    {
+        if (lookahead < 0 || lookahead > MAX_LOOKAHEAD)
+            throw new IllegalArgumentException("Lookahead must be between 0 and " + MAX_LOOKAHEAD);
+        this.lookahead = lookahead;
+        this.pool = pool;
+        ShapeCatalog catalog = ShapeCatalog.forType(type);
+        SplitRandom random = new SplitRandom(SAMPLE_SEED);
+        samples = new Shape[lookahead][SAMPLES];
+        for (Shape[] level : samples)
+            for (int k = 0; k < SAMPLES; ++k)
+                level[k] = catalog.sample(random);
+        for (int i = 0; i < TOP_BEAM; ++i)
+            expansions[i] = new Expansion(i);
+    }
+
+    /**
+     * Searches the best placement. The grid and packet must not be modified until the search has finished.
+     *
+     * @param grid   the placed packets
+     * @param packet the falling packet; not modified
+     * @return the best placement; null if the packet does not fit anywhere or the search has been cancelled
+     */
+    public Placement search(Grid grid, Packet packet)
+    {
+        cancelled = false;
+        this.grid = grid;
+        top.count = 0;
+        int found = reachability.findPlacements(grid, packet);
+        for (int i = 0; i < found; ++i)
+            top.add(grid, reachability.getShape(i), reachability.getColumn(i), reachability.getRow(i));
+        if (top.count == 0 || isCancelled())
+            return null;
+        if (lookahead == 0)
+        {
+            top.selectBest(1);
+            return new Placement(top.shapes[0], top.columns[0], top.rows[0], top.points[0], top.values[0]);
+        }
+
+        //expand the best placements, in parallel if there is a pool
+        expanded = top.selectBest(TOP_BEAM);
+        if (pool != null)
+        {
+            for (int i = 0; i < expanded; ++i)
+                expansions[i].reinitialize();
+            root.reinitialize();
+            pool.invoke(root);
+        } else
+            for (int i = 0; i < expanded; ++i)
+                expansions[i].compute();
+        if (isCancelled())
+            return null;
+
+        int best = 0;
+        for (int i = 1; i < expanded; ++i)
+            if (expansions[i].value > expansions[best].value)
+                best = i;
+        return new Placement(top.shapes[best], top.columns[best], top.rows[best], top.points[best],
+                expansions[best].value);
+    }
+
+    /**
+     * Stops the running search as soon as possible; {@link #search(Grid, Packet)} returns null then. Following
+     * searches are not affected.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * Checked regularly by a running search. Can be overridden to cancel searches by other conditions.
+     *
+     * @return true if the running search has been cancelled
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * @return true if the placements of a rotation have already been added, e.g. for symmetric shapes
+     */
+    private static boolean isRotationKnown(Level level, Shape shape)
+    {
+        for (int i = 0; i < level.count; ++i)
+            if (level.shapes[i] == shape || level.shapes[i].getBits() == shape.getBits()
+                    && level.shapes[i].getWidth() == shape.getWidth())
+                return true;
+        return false;
+    }
+
+    /**
+     * Averages the best rating of the sampled shapes of a level.
+     */
+    private float expected(Grid board, int depth, Level[] levels)
+    {
+        float sum = 0;
+        for (Shape sample : samples[depth])
+        {
+            if (isCancelled())
+                return 0;
+            sum += best(board, sample, depth, levels);
+        }
+        return sum / SAMPLES;
+    }
+
+    /**
+     * Rates the best placement of a following packet, which can reach every column since it spawns above the field.
+     */
+    private float best(Grid board, Shape sample, int depth, Level[] levels)
+    {
+        Level level = levels[depth];
+        level.count = 0;
+        Shape rotated = sample;
+        for (int r = 0; r < 4; ++r, rotated = rotated.rotated(true))
+        {
+            if (r > 0 && isRotationKnown(level, rotated))
+                continue;
+            for (int column = 0; column <= Grid.COLUMNS - rotated.getWidth(); ++column)
+                level.add(board, rotated, column, board.landingRow(rotated, column, Grid.ROWS));
+        }
+        if (level.count == 0)
+            return GAME_OVER_VALUE;
+        if (depth == 0)
+        {
+            level.selectBest(1);
+            return level.values[0];
+        }
+
+        int n = level.selectBest(BEAM);
+        float best = GAME_OVER_VALUE;
+        for (int i = 0; i < n; ++i)
+        {
+            level.board.set(board);
+            level.board.add(level.shapes[i], level.columns[i], level.rows[i]);
+            best = Math.max(best, level.points[i] + expected(level.board, depth - 1, levels));
+        }
+        return best;
+    }
+
+    /**
+     * Rates the shape of the skyline: covered holes, height and bumpiness.
+     */
+    private static float penalty(Grid board)
+    {
+        int heights = 0;
+        int bumpiness = 0;
+        for (int column = 0; column < Grid.COLUMNS; ++column)
+        {
+            heights += board.getHeight(column);
+            if (column > 0)
+                bumpiness += Math.abs(board.getHeight(column) - board.getHeight(column - 1));
+        }
+        return HOLE_PENALTY * board.countHoles() + HEIGHT_PENALTY * heights + BUMPINESS_PENALTY * bumpiness;
+    }
+}
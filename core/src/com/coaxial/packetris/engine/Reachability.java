@@ -0,0 +1,215 @@
+package com.coaxial.packetris.engine;
+
+import com.coaxial.packetris.elements.Grid;
+import com.coaxial.packetris.elements.Packet;
+import com.coaxial.packetris.elements.Shape;
+
+import java.util.Arrays;
+
+/**
+ * Finds the places a falling packet can still come to rest at inside the main field: whether there is any, so
+ * that a lost round can end as soon as its last packet spawns instead of after the packet has fallen down, and
+ * all of them, for the {@link PlacementSearch}.
+ * <p>
+ * A breadth-first search explores every state the player can reach - column, rotation and height - by moving,
+ * rotating and falling with the rules of {@link Packet#setCheckedPosX(int, Grid)} and
+ * {@link Packet#rotate(boolean, Grid)}, e.g. sliding under an overhang. Heights are tracked in half blocks, since
+ * rotating moves a packet by multiples of half a block. When only asking whether there is a place, dropping the
+ * packet straight down is checked first with the skyline of the grid, which usually fits. An instance is reused
+ * for every search and must not be shared between threads.
+ */
+
+public class Reachability
+{
+    private static final int HALF_BLOCK = Packet.BLOCK_SIDE_LENGTH / 2;
+    //half blocks from the bottom of the field up to the spawn height, plus what rotating can add on top of it
+    private static final int LEVELS = (Layout.GAME_HEIGHT - Layout.BOTTOM_SPACE) / HALF_BLOCK
+            + 2 * Shape.MAX_SIDE_LENGTH;
+    private static final int STATES = 4 * Grid.COLUMNS * LEVELS;
+
+    private final Shape[] rotations = new Shape[4]; //clockwise rotations of the searched shape
+    private boolean[] visited; //allocated on the first search
+    private int[] queue;
+    private int[] placements; //resting states found by findPlacements, see state
+    private int placementCount;
+    private Packet probe; //moved around to apply the rules of the player
+
+    /**
+     * Checks whether a packet can still be placed inside the field from its current position.
+     *
+     * @param grid   the placed packets
+     * @param packet the falling packet; not modified
+     * @return true if the packet can come to rest inside the field; false if it will stick out wherever it lands
+     */
+    public boolean canPlace(Grid grid, Packet packet)
+    {
+        if (fitsDropped(grid, packet.getShape(), packet.getPosX(), packet.getRow()))
+            return true;
+        setRotations(packet.getShape());
+
+        //a packet above the field can move and rotate freely, so dropping straight down covers every placement
+        if (packet.getRow() >= Grid.ROWS)
+        {
+            for (Shape rotation : rotations)
+                for (int x = 0; x <= Grid.COLUMNS - rotation.getWidth(); ++x)
+                    if (fitsDropped(grid, rotation, x, Grid.ROWS))
+                        return true;
+            if (grid.countHoles() == 0)
+                return false; //without empty cells below the skyline, every packet rests on the skyline
+        }
+        return search(grid, packet, false);
+    }
+
+    /**
+     * Finds every placement a packet can come to rest at inside the field from its current position.
+     * Placements of symmetric rotations are only found once.
+     *
+     * @param grid   the placed packets
+     * @param packet the falling packet; not modified
+     * @return the amount of placements, see {@link #getShape(int)}, {@link #getColumn(int)} and {@link #getRow(int)};
+     * valid until the next search
+     */
+    public int findPlacements(Grid grid, Packet packet)
+    {
+        setRotations(packet.getShape());
+        search(grid, packet, true);
+        return placementCount;
+    }
+
+    /**
+     * @param i the index of a placement found by {@link #findPlacements(Grid, Packet)}
+     * @return the shape of the packet in the rotation of the placement
+     */
+    public Shape getShape(int i)
+    {
+        return rotations[placements[i] / LEVELS / Grid.COLUMNS];
+    }
+
+    public int getColumn(int i)
+    {
+        return placements[i] / LEVELS % Grid.COLUMNS;
+    }
+
+    public int getRow(int i)
+    {
+        return placements[i] % LEVELS / 2;
+    }
+
+    private void setRotations(Shape shape)
+    {
+        rotations[0] = shape;
+        for (int r = 1; r < 4; ++r)
+            rotations[r] = rotations[r - 1].rotated(true);
+    }
+
+    private static boolean fitsDropped(Grid grid, Shape shape, int x, int fromRow)
+    {
+        return grid.landingRow(shape, x, fromRow) + shape.getHeight() <= Grid.ROWS;
+    }
+
+    /**
+     * Explores every reachable state until one rests inside the field, or all of them to collect the resting ones.
+     */
+    private boolean search(Grid grid, Packet packet, boolean all)
+    {
+        if (visited == null)
+        {
+            visited = new boolean[STATES];
+            queue = new int[STATES];
+            placements = new int[STATES];
+            probe = new Packet(packet.getShape());
+        } else
+            Arrays.fill(visited, false);
+        placementCount = 0;
+
+        int head = 0;
+        int tail = 0;
+        int start = state(0, packet.getPosX(), level(packet.getPosY()));
+        visited[start] = true;
+        queue[tail++] = start;
+        while (head < tail)
+        {
+            int state = queue[head++];
+            int level = state % LEVELS;
+            int x = state / LEVELS % Grid.COLUMNS;
+            int r = state / LEVELS / Grid.COLUMNS;
+            Shape shape = rotations[r];
+
+            //fall by half a block, or rest here
+            place(shape, x, level - 1);
+            if (level > 0 && grid.fits(probe))
+                tail = visit(tail, r, x, level - 1);
+            else if (level / 2 + shape.getHeight() <= Grid.ROWS)
+            {
+                if (!all)
+                    return true;
+                placements[placementCount++] = state;
+            }
+
+            //move sideways
+            for (int dx = -1; dx <= 1; dx += 2)
+            {
+                place(shape, x, level);
+                probe.setCheckedPosX(x + dx, grid);
+                if (probe.getPosX() != x)
+                    tail = visit(tail, r, probe.getPosX(), level);
+            }
+
+            //rotate in both directions
+            for (int clockwise = 0; clockwise < 2; ++clockwise)
+            {
+                place(shape, x, level);
+                probe.rotate(clockwise == 1, grid);
+                if (probe.getShape() != shape)
+                    tail = visit(tail, indexOf(probe.getShape()), probe.getPosX(), level(probe.getPosY()));
+            }
+        }
+        return placementCount > 0;
+    }
+
+    private void place(Shape shape, int x, int level)
+    {
+        probe.reset(shape);
+        probe.setPosX(x);
+        probe.setPosY(Layout.BOTTOM_SPACE + level * HALF_BLOCK);
+    }
+
+    private int visit(int tail, int r, int x, int level)
+    {
+        if (level >= LEVELS)
+            return tail; //far above the field, reachable from lower states anyway
+        int state = state(r, x, level);
+        if (!visited[state])
+        {
+            visited[state] = true;
+            queue[tail++] = state;
+        }
+        return tail;
+    }
+
+    private int indexOf(Shape shape)
+    {
+        for (int r = 0; r < 4; ++r)
+            if (rotations[r] == shape || rotations[r].getBits() == shape.getBits()
+                    && rotations[r].getWidth() == shape.getWidth())
+                return r;
+        throw new IllegalStateException("Not a rotation of the shape");
+    }
+
+    private static int state(int r, int x, int level)
+    {
+        return (r * Grid.COLUMNS + x) * LEVELS + level;
+    }
+
+    /**
+     * Returns the height a search from the given position starts at. Placements found by
+     * {@link #findPlacements(Grid, Packet)} can change once a falling packet has dropped below it.
+     *
+     * @param posY the vertical position of a packet
+     * @return the height in half blocks above the bottom of the field
+     */
+    public static int level(float posY)
+    {
+        return Math.min(LEVELS - 1, (int) ((posY - Layout.BOTTOM_SPACE) / HALF_BLOCK));
+    }
+}
@@ -0,0 +1,360 @@
+package com.coaxial.packetris.engine;
+
+import com.coaxial.packetris.GameType;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The recording of a game round: its type, the seed of its random generator and the actions of the player,
+ * each with the tick it was applied at. Since the engine is deterministic, this is enough to play the round again
+ * exactly as it happened.
+ * <p>
+ * Actions are stored as variable length integers holding the ticks since the previous action and the action
+ * itself, so most actions take a single byte. The binary file starts with a header holding the type, the seed
+ * and the final score and ticks of the round, which are compared after playing the round again to detect
+ * divergences.
+ *
+ * @see Playback
+ */
+
+public class Replay
+{
+    private static final int MAGIC = 0x504B5250; //"PKRP"
+    private static final int VERSION = 2; //1: trapped packets kept falling, see GameEngine.setEndTrappedRounds
+    private static final Action[] ACTIONS = {Action.MOVE_LEFT, Action.MOVE_RIGHT, Action.ROTATE_LEFT,
+            Action.ROTATE_RIGHT}; //the 2 bit codes of the actions
+    private static final long MAX_FRAME_BUDGET = 8000000; //time simulated per frame at maximum speed, in nanoseconds
+
+    /**
+     * The speed of a playback.
+     */
+    public enum Speed
+    {
+        NORMAL(1), FAST(10),
+        MAX(0); //simulates as many ticks as fit into a frame, only the last state is rendered
+
+        private final int factor;
+
+        Speed(int factor)
+        {
+            this.factor = factor;
+        }
+
+        /**
+         * @return the next faster speed, or the normal speed after the maximum one
+         */
+        public Speed next()
+        {
+            return values()[(ordinal() + 1) % values().length];
+        }
+    }
+
+    private final GameType type;
+    private final long seed;
+    private int version = VERSION; //of the rules the round has been played with
+    private byte[] events = new byte[256]; //encoded actions
+    private int length = 0; //bytes of events in use
+    private int count = 0; //amount of actions
+    private long lastTick = 0; //tick of the last recorded action
+    private int score = -1; //-1 until the round is over
+    private long ticks = -1;
+
+    /**
+     * Creates an empty recording.
+     *
+     * @param type the type of the round
+     * @param seed the seed of the engine playing the round, see {@link GameEngine#GameEngine(GameType,
+     *             GameEngine.Listener, long)}
+     */
+    public Replay(GameType type, long seed)
+    {
+        this.type = type;
+        this.seed = seed;
+    }
+
+    /**
+     * Records an action of the player. Must be called before the action is passed to the engine.
+     *
+     * @param tick   the ticks simulated by the engine so far, see {@link GameEngine#getTicks()}
+     * @param action the action; {@link Action#NONE} is not recorded
+     */
+    public void record(long tick, Action action)
+    {
+        if (action == Action.NONE)
+            return;
+        if (tick < lastTick)
+            throw new IllegalArgumentException("Actions must be recorded in order");
+        if (length + 10 > events.length)
+            events = Arrays.copyOf(events, events.length * 2);
+        length = writeVarLong(events, length, (tick - lastTick) << 2 | (action.ordinal() - Action.MOVE_LEFT.ordinal()));
+        lastTick = tick;
+        count++;
+    }
+
+    /**
+     * Records the result of the round. Must be called when the round is over.
+     *
+     * @param engine the engine that played the round
+     */
+    public void end(GameEngine engine)
+    {
+        score = engine.getScore();
+        ticks = engine.getTicks();
+    }
+
+    /**
+     * Starts playing the round again.
+     *
+     * @param listener receives the events of the new engine; may be null
+     * @param speed    the initial speed
+     * @return the playback
+     */
+    public Playback play(GameEngine.Listener listener, Speed speed)
+    {
+        GameEngine engine = new GameEngine(type, listener, seed);
+        engine.setEndTrappedRounds(version >= 2);
+        return new Playback(engine, speed);
+    }
+
+    /**
+     * Plays the whole round again as fast as possible, without any listener.
+     *
+     * @return the engine, after the round is over
+     */
+    public GameEngine run()
+    {
+        Playback playback = play(null, Speed.MAX);
+        playback.finish();
+        return playback.getEngine();
+    }
+
+    /**
+     * Writes the replay in its binary format. Must be called after {@link #end(GameEngine)}.
+     *
+     * @param stream the stream, not closed by this method
+     * @throws IOException if writing fails
+     */
+    public void write(OutputStream stream) throws IOException
+    {
+        if (score < 0)
+            throw new IllegalStateException("The round is not over yet");
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(type.ordinal());
+        out.writeLong(seed);
+        out.writeInt(score);
+        out.writeLong(ticks);
+        out.writeInt(count);
+        out.writeInt(length);
+        out.write(events, 0, length);
+        out.flush();
+    }
+
+    /**
+     * Reads a replay written by {@link #write(OutputStream)}.
+     *
+     * @param stream the stream, not closed by this method
+     * @return the replay
+     * @throws IOException if the stream does not contain a valid replay
+     */
+    public static Replay read(InputStream stream) throws IOException
+    {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a replay");
+        int version = in.readByte();
+        if (version < 1 || version > VERSION)
+            throw new IOException("Unknown replay version");
+        int type = in.readByte();
+        if (type < 0 || type >= GameType.values().length)
+            throw new IOException("Unknown game type " + type);
+        Replay replay = new Replay(GameType.values()[type], in.readLong());
+        replay.version = version;
+        replay.score = in.readInt();
+        replay.ticks = in.readLong();
+        replay.count = in.readInt();
+        replay.length = in.readInt();
+        if (replay.count < 0 || replay.length < replay.count || replay.length > replay.count * 10)
+            throw new IOException("Corrupt replay");
+        replay.events = new byte[replay.length];
+        in.readFully(replay.events);
+        return replay;
+    }
+
+    public GameType getType()
+    {
+        return type;
+    }
+
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * @return the amount of recorded actions
+     */
+    public int getActionCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return the final score of the recorded round; -1 if it is not over yet
+     */
+    public int getScore()
+    {
+        return score;
+    }
+
+    /**
+     * @return the ticks the recorded round lasted; -1 if it is not over yet
+     */
+    public long getTicks()
+    {
+        return ticks;
+    }
+
+    private static int writeVarLong(byte[] buffer, int position, long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            buffer[position++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Feeds the recorded actions back into a new engine, at the ticks they were applied at.
+     * Unlike {@link GameEngine#step(Action, float)}, the frame time is not limited, so the playback can run
+     * at any speed; the rendering is not interpolated between ticks.
+     */
+    public class Playback
+    {
+        private final GameEngine engine;
+        private Speed speed;
+        private float accumulator = 0; //frame time not yet consumed by simulation ticks
+        private int position = 0; //in the events
+        private int played = 0; //amount of actions applied
+        private long nextTick; //tick of the next action
+        private Action nextAction; //null if all actions have been applied
+
+        private Playback(GameEngine engine, Speed speed)
+        {
+            this.engine = engine;
+            this.speed = speed;
+            readNext(0);
+        }
+
+        /**
+         * Advances the round by the time of a frame, multiplied by the speed. At {@link Speed#MAX}, simulates
+         * as many ticks as fit into a fixed time budget instead.
+         *
+         * @param delta the time since the last frame in seconds
+         */
+        public void advance(float delta)
+        {
+            if (speed == Speed.MAX)
+            {
+                long start = System.nanoTime();
+                do
+                {
+                    for (int i = 0; i < 64 && !engine.isGameOver(); ++i)
+                        tick();
+                } while (!engine.isGameOver() && System.nanoTime() - start < MAX_FRAME_BUDGET);
+                return;
+            }
+            accumulator += delta * speed.factor;
+            while (!engine.isGameOver() && accumulator >= GameEngine.TICK_TIME)
+            {
+                accumulator -= GameEngine.TICK_TIME;
+                tick();
+            }
+        }
+
+        /**
+         * Plays the rest of the round at once.
+         */
+        public void finish()
+        {
+            while (!engine.isGameOver())
+                tick();
+        }
+
+        /**
+         * Applies the actions recorded at the current tick and simulates it.
+         */
+        public void tick()
+        {
+            while (nextAction != null && nextTick <= engine.getTicks())
+            {
+                engine.apply(nextAction);
+                played++;
+                readNext(nextTick);
+            }
+            engine.tick();
+        }
+
+        /**
+         * @return true if the round is over and ended differently than the recorded one, e.g. because the rules
+         * of the engine have changed since the recording
+         */
+        public boolean isDiverged()
+        {
+            return engine.isGameOver() && (engine.getScore() != score || engine.getTicks() != ticks
+                    || played != count);
+        }
+
+        /**
+         * @return the amount of recorded actions applied so far
+         */
+        public int getPlayedActions()
+        {
+            return played;
+        }
+
+        public GameEngine getEngine()
+        {
+            return engine;
+        }
+
+        public Speed getSpeed()
+        {
+            return speed;
+        }
+
+        public void setSpeed(Speed speed)
+        {
+            this.speed = speed;
+            accumulator = 0;
+        }
+
+        private void readNext(long tick)
+        {
+            if (position >= length)
+            {
+                nextAction = null;
+                return;
+            }
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do
+            {
+                b = events[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0 && position < length);
+            nextTick = tick + (value >>> 2);
+            nextAction = ACTIONS[(int) (value & 3)];
+        }
+    }
+}
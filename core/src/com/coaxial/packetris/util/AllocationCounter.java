@@ -0,0 +1,26 @@
+package com.coaxial.packetris.util;
+
+/**
+ * Platform specific access to the allocation statistics of the rendering thread.
+ * Passed to {@link com.coaxial.packetris.PacketrisGame} by the launcher of a debug build to enable
+ * the {@link AllocationMonitor}.
+ */
+
+public interface AllocationCounter
+{
+    /**
+     * Starts counting allocations. Called once before the first frame.
+     */
+    void start();
+
+    /**
+     * @return the amount of objects allocated by the current thread since {@link #start()}; 0 if the platform
+     * only counts bytes
+     */
+    long getAllocatedObjects();
+
+    /**
+     * @return the amount of bytes allocated by the current thread since {@link #start()}
+     */
+    long getAllocatedBytes();
+}
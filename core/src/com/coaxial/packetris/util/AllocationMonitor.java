@@ -0,0 +1,49 @@
+package com.coaxial.packetris.util;
+
+import com.badlogic.gdx.Gdx;
+
+/**
+ * Debug tool that counts the allocations of every frame and logs each frame that allocated memory.
+ * The frame loop is meant to be free of allocations while a game is running, since garbage collections
+ * cause visible hitches on low-end devices. Expected allocations are switching screens and spawning a new packet.
+ *
+ * @see AllocationCounter
+ */
+
+public class AllocationMonitor
+{
+    private static final String TAG = "Allocations";
+
+    private final AllocationCounter counter;
+    private long frame = 0;
+    private long objects; //counter values at the start of the current frame
+    private long bytes;
+
+    public AllocationMonitor(AllocationCounter counter)
+    {
+        this.counter = counter;
+        counter.start();
+    }
+
+    /**
+     * Remembers the counter values; call right before rendering a frame.
+     */
+    public void beginFrame()
+    {
+        objects = counter.getAllocatedObjects();
+        bytes = counter.getAllocatedBytes();
+    }
+
+    /**
+     * Logs the allocations since {@link #beginFrame()} if there were any; call right after rendering a frame.
+     * Logging itself allocates memory, but only after the counters were read.
+     */
+    public void endFrame()
+    {
+        long allocatedObjects = counter.getAllocatedObjects() - objects;
+        long allocatedBytes = counter.getAllocatedBytes() - bytes;
+        if (allocatedObjects > 0 || allocatedBytes > 0)
+            Gdx.app.log(TAG, "Frame " + frame + " allocated " + allocatedObjects + " objects (" + allocatedBytes + " bytes)");
+        frame++;
+    }
+}
@@ -0,0 +1,64 @@
+package com.coaxial.packetris.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Replaces files so that a crash leaves either the old or the new content behind, never neither.
+ * <p>
+ * The new content is written and synced to a temporary file next to the target, which is then moved onto the
+ * target. Each target needs a temporary file of its own, so {@link #recover(File, File)} knows where a move
+ * was headed.
+ */
+
+public class AtomicFiles
+{
+    /**
+     * Moves a synced temporary file onto the target, replacing the target atomically where the file system can.
+     *
+     * @param temp   the file holding the new content
+     * @param target the file to replace
+     * @throws IOException if the file could not be moved
+     */
+    public static void replace(File temp, File target) throws IOException
+    {
+        if (temp.renameTo(target)) //atomic on Android and other POSIX systems
+            return;
+        //some desktop file systems refuse to rename onto an existing file
+        Path from = temp.toPath();
+        Path to = target.toPath();
+        try
+        {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Finishes a replacement interrupted by a crash. Must be called before the target is read.
+     * <p>
+     * If the target is missing, a move onto it was interrupted and the temporary file becomes the target. Otherwise
+     * the temporary file is a leftover of an unfinished write and is deleted. If the target was being written for
+     * the first time, the recovered file may be incomplete, so the reader must still check it.
+     *
+     * @param temp   the temporary file used to replace the target
+     * @param target the file to recover
+     * @throws IOException if the temporary file could not be moved
+     */
+    public static void recover(File temp, File target) throws IOException
+    {
+        if (!temp.exists())
+            return;
+        if (target.exists())
+            temp.delete();
+        else
+            replace(temp, target);
+    }
+}
@@ -0,0 +1,39 @@
+package com.coaxial.packetris.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * A fork-join pool for searches running while the game renders, e.g. the best score of a finished round.
+ * Unlike the common pool, it only uses half of the cores and its threads have the lowest priority, so the
+ * render thread always gets a core of its own.
+ */
+
+public class BackgroundPool
+{
+    private static final String TAG = "Background";
+    private static ForkJoinPool pool; //created on first use
+
+    /**
+     * @return the shared pool
+     */
+    public static synchronized ForkJoinPool get()
+    {
+        if (pool == null)
+            pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                    new ForkJoinPool.ForkJoinWorkerThreadFactory()
+                    {
+                        @Override
+                        public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+                        {
+                            ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool)
+                            {
+                            };
+                            thread.setName(TAG + "-" + thread.getPoolIndex());
+                            thread.setPriority(Thread.MIN_PRIORITY);
+                            return thread;
+                        }
+                    }, null, false);
+        return pool;
+    }
+}
@@ -0,0 +1,60 @@
+package com.coaxial.packetris.util;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+
+/**
+ * Naming and selection of the pre-compressed background variants.
+ * <p>
+ * Backgrounds are compressed at build time by the tools module: each image is flattened onto the black clear
+ * color (the backgrounds are the first thing drawn every frame, so they do not need an alpha channel), scaled to
+ * every height of {@link #HEIGHTS} and encoded with ETC1 into a KTX file including all mipmap levels.
+ * Without alpha, ETC2 RGB is a superset of ETC1, so the same data is used on OpenGL ES 2 and 3 devices;
+ * libgdx decodes it in software on the rare devices without ETC1 support.
+ */
+
+public class Backgrounds
+{
+    public static final String DIRECTORY = "backgrounds/";
+    public static final int[] HEIGHTS = {960, 1280, 1920}; //heights of the variants in pixels, ascending
+
+    /**
+     * @param image  the file name of the original image, e.g. "newbg.png"
+     * @param height the height of the variant, one of {@link #HEIGHTS}
+     * @return the file name of the compressed variant
+     */
+    public static String variant(String image, int height)
+    {
+        int dot = image.lastIndexOf('.');
+        return DIRECTORY + (dot < 0 ? image : image.substring(0, dot)) + "_" + height + ".ktx";
+    }
+
+    /**
+     * Chooses the smallest variant that is at least as high as the screen, or the largest one if the screen is
+     * higher than all of them.
+     *
+     * @param image        the file name of the original image
+     * @param screenHeight the height of the back buffer in pixels
+     * @return the file name of the variant; the original image if no variant has been baked
+     */
+    public static String select(String image, int screenHeight)
+    {
+        String selected = image;
+        for (int height : HEIGHTS)
+        {
+            String variant = variant(image, height);
+            FileHandle file = Gdx.files.internal(variant);
+            if (!file.exists())
+                continue;
+            selected = variant;
+            if (height >= screenHeight)
+                break;
+        }
+        return selected;
+    }
+
+    public static boolean isCompressed(String fileName)
+    {
+        return fileName.endsWith(".ktx");
+    }
+}
@@ -0,0 +1,167 @@
+package com.coaxial.packetris.util;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.PixmapIO;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.PixmapPacker;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/**
+ * A font rasterized ahead of time: the glyph metrics and a single page holding all glyphs.
+ * <p>
+ * Fonts are baked at build time by the tools module and stored in the AngelCode BMFont text format (a .fnt file
+ * and a .png page next to it), so that the game does not have to run FreeType when it starts. The page is kept
+ * as a {@link Pixmap}, so it can be packed into the {@link com.coaxial.packetris.UiAtlas} together with
+ * all other UI images.
+ *
+ * @see BakedFontLoader
+ */
+
+public class BakedFont implements Disposable
+{
+    private static final int PAGE_SIZE = 1024;
+
+    private final BitmapFont.BitmapFontData data;
+    private final Pixmap page;
+    private final boolean cached; //true if this font was generated on a device and read from its local storage
+
+    public BakedFont(BitmapFont.BitmapFontData data, Pixmap page, boolean cached)
+    {
+        this.data = data;
+        this.page = page;
+        this.cached = cached;
+    }
+
+    /**
+     * Rasterizes a font with FreeType. Used by the build step and, on a device, as fallback if a baked font is
+     * missing or lacks a glyph.
+     *
+     * @param generator the generator of the TrueType font, see {@link FontStyle#SOURCE}
+     * @param size      the size in pixels
+     * @return the font; the caller has to dispose it
+     */
+    public static BakedFont generate(FreeTypeFontGenerator generator, int size)
+    {
+        PixmapPacker packer = new PixmapPacker(PAGE_SIZE, PAGE_SIZE, Pixmap.Format.RGBA8888, 2, false);
+        FreeTypeFontGenerator.FreeTypeFontParameter param = new FreeTypeFontGenerator.FreeTypeFontParameter();
+        param.size = size;
+        param.packer = packer; //keeps the glyphs in pixmaps instead of uploading them to a texture
+        BitmapFont.BitmapFontData data = generator.generateData(param);
+        if (packer.getPages().size != 1)
+            throw new GdxRuntimeException("Font of size " + size + " does not fit into one page");
+
+        //crop the page to the area actually used by glyphs
+        int width = 1;
+        int height = 1;
+        for (BitmapFont.Glyph glyph : glyphs(data))
+        {
+            width = Math.max(width, glyph.srcX + glyph.width);
+            height = Math.max(height, glyph.srcY + glyph.height);
+        }
+        Pixmap page = new Pixmap(width, height, Pixmap.Format.RGBA8888);
+        page.setBlending(Pixmap.Blending.None);
+        page.drawPixmap(packer.getPages().first().getPixmap(), 0, 0, 0, 0, width, height);
+        packer.dispose();
+        return new BakedFont(data, page, false);
+    }
+
+    /**
+     * Writes this font in the AngelCode BMFont text format, the page is written as PNG next to it.
+     *
+     * @param fntFile the .fnt file to write
+     */
+    public void write(FileHandle fntFile)
+    {
+        FileHandle pageFile = fntFile.sibling(fntFile.nameWithoutExtension() + ".png");
+        Array<BitmapFont.Glyph> glyphs = glyphs(data);
+        StringBuilder fnt = new StringBuilder();
+        fnt.append("info face=\"").append(fntFile.nameWithoutExtension()).append("\" size=0 bold=0 italic=0 ")
+                .append("charset=\"\" unicode=0 stretchH=100 smooth=1 aa=1 padding=")
+                .append((int) data.padTop).append(',').append((int) data.padRight).append(',')
+                .append((int) data.padBottom).append(',').append((int) data.padLeft).append(" spacing=0,0\n");
+        fnt.append("common lineHeight=").append((int) data.lineHeight)
+                .append(" base=").append((int) (data.capHeight + data.ascent))
+                .append(" scaleW=").append(page.getWidth()).append(" scaleH=").append(page.getHeight())
+                .append(" pages=1 packed=0\n");
+        fnt.append("page id=0 file=\"").append(pageFile.name()).append("\"\n");
+        fnt.append("chars count=").append(glyphs.size).append('\n');
+        for (BitmapFont.Glyph glyph : glyphs)
+            fnt.append("char id=").append(glyph.id)
+                    .append(" x=").append(glyph.srcX).append(" y=").append(glyph.srcY)
+                    .append(" width=").append(glyph.width).append(" height=").append(glyph.height)
+                    .append(" xoffset=").append(glyph.xoffset)
+                    .append(" yoffset=").append(-(glyph.height + glyph.yoffset)) //BMFont measures from the top
+                    .append(" xadvance=").append(glyph.xadvance).append(" page=0 chnl=0\n");
+        StringBuilder kernings = new StringBuilder();
+        int kerningCount = 0;
+        for (BitmapFont.Glyph first : glyphs)
+            for (BitmapFont.Glyph second : glyphs)
+            {
+                int amount = first.getKerning((char) second.id);
+                if (amount == 0)
+                    continue;
+                kernings.append("kerning first=").append(first.id).append(" second=").append(second.id)
+                        .append(" amount=").append(amount).append('\n');
+                kerningCount++;
+            }
+        fnt.append("kernings count=").append(kerningCount).append('\n').append(kernings);
+
+        fntFile.writeString(fnt.toString(), false, "UTF-8");
+        PixmapIO.writePNG(pageFile, page);
+    }
+
+    /**
+     * @param chars the characters to check
+     * @return true if this font has a glyph for every character; false otherwise
+     */
+    public boolean hasGlyphs(CharSequence chars)
+    {
+        for (int i = 0; i < chars.length(); ++i)
+            if (!data.hasGlyph(chars.charAt(i)))
+                return false;
+        return true;
+    }
+
+    /**
+     * Creates the font to draw with.
+     *
+     * @param region the region {@link #getPage()} has been packed to
+     * @return the font; disposing it does not dispose the texture of the region
+     */
+    public BitmapFont createFont(TextureRegion region)
+    {
+        return new BitmapFont(data, region, true);
+    }
+
+    public Pixmap getPage()
+    {
+        return page;
+    }
+
+    public boolean isCached()
+    {
+        return cached;
+    }
+
+    @Override
+    public void dispose()
+    {
+        page.dispose();
+    }
+
+    private static Array<BitmapFont.Glyph> glyphs(BitmapFont.BitmapFontData data)
+    {
+        Array<BitmapFont.Glyph> glyphs = new Array<BitmapFont.Glyph>();
+        for (BitmapFont.Glyph[] glyphPage : data.glyphs)
+            if (glyphPage != null)
+                for (BitmapFont.Glyph glyph : glyphPage)
+                    if (glyph != null)
+                        glyphs.add(glyph);
+        return glyphs;
+    }
+}
@@ -0,0 +1,103 @@
+package com.coaxial.packetris.util;
+
+import com.badlogic.gdx.Files;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.assets.AssetDescriptor;
+import com.badlogic.gdx.assets.AssetLoaderParameters;
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.assets.loaders.AsynchronousAssetLoader;
+import com.badlogic.gdx.assets.loaders.FileHandleResolver;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Loads a {@link BakedFont} from a .fnt file and its page. Parsing the file and decoding the page are done on the
+ * loading thread, so nothing but creating the object is left for the render thread.
+ * <p>
+ * Fonts generated on the device by the FreeType fallback are written to the local storage; they are preferred
+ * over the fonts shipped with the assets as long as those are the ones the cache was generated for. An app update
+ * shipping a changed or new baked font makes the cache stale, so the shipped font is loaded and checked again.
+ */
+
+public class BakedFontLoader extends AsynchronousAssetLoader<BakedFont, BakedFontLoader.BakedFontParameter>
+{
+    private BitmapFont.BitmapFontData data;
+    private Pixmap page;
+    private boolean cached;
+
+    public BakedFontLoader()
+    {
+        super(new FileHandleResolver()
+        {
+            @Override
+            public FileHandle resolve(String fileName)
+            {
+                FileHandle local = Gdx.files.local(fileName);
+                FileHandle version = versionFile(local);
+                if (local.exists() && version.exists() && version.readString("UTF-8").equals(shippedVersion(fileName)))
+                    return local;
+                return Gdx.files.internal(fileName);
+            }
+        });
+    }
+
+    /**
+     * Marks a font written to the local storage as generated for the baked font currently shipped, see
+     * {@link BakedFont#write(FileHandle)}.
+     *
+     * @param fileName the path of the .fnt file, relative to the assets
+     */
+    public static void markCached(String fileName)
+    {
+        versionFile(Gdx.files.local(fileName)).writeString(shippedVersion(fileName), false, "UTF-8");
+    }
+
+    /**
+     * Identifies the baked font shipped with the assets by the hash of its .fnt file and the size of its page.
+     */
+    private static String shippedVersion(String fileName)
+    {
+        FileHandle fnt = Gdx.files.internal(fileName);
+        if (!fnt.exists())
+            return "none";
+        FileHandle page = fnt.sibling(fnt.nameWithoutExtension() + ".png");
+        return Integer.toHexString(fnt.readString("UTF-8").hashCode()) + " " + (page.exists() ? page.length() : 0);
+    }
+
+    private static FileHandle versionFile(FileHandle fntFile)
+    {
+        return fntFile.sibling(fntFile.nameWithoutExtension() + ".version");
+    }
+
+    @Override
+    public void loadAsync(AssetManager manager, String fileName, FileHandle file, BakedFontParameter parameter)
+    {
+        data = new BitmapFont.BitmapFontData(file, false);
+        if (data.getImagePaths().length != 1)
+            throw new IllegalArgumentException("Baked fonts must have exactly one page: " + fileName);
+        page = new Pixmap(Gdx.files.getFileHandle(data.getImagePath(0), file.type()));
+        cached = file.type() == Files.FileType.Local;
+    }
+
+    @Override
+    public BakedFont loadSync(AssetManager manager, String fileName, FileHandle file, BakedFontParameter parameter)
+    {
+        BakedFont font = new BakedFont(data, page, cached);
+        data = null;
+        page = null;
+        return font;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Array<AssetDescriptor> getDependencies(String fileName, FileHandle file, BakedFontParameter parameter)
+    {
+        return null;
+    }
+
+    public static class BakedFontParameter extends AssetLoaderParameters<BakedFont>
+    {
+    }
+}
@@ -0,0 +1,43 @@
+package com.coaxial.packetris.util;
+
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+
+/**
+ * Draws plain shapes with a batch by stretching a white texture region, so that they can be drawn
+ * in the same batch pass as textures and text. Uses the current color of the batch.
+ *
+ * @see com.coaxial.packetris.UiAtlas#getPixel()
+ */
+
+public class BatchShapes
+{
+    /**
+     * Draws a horizontal or vertical line with a width of one unit, centered on the given points.
+     * The line is extended by half a unit at both ends so that lines meeting at a corner close it.
+     */
+    public static void line(Batch batch, TextureRegion pixel, float x1, float y1, float x2, float y2)
+    {
+        batch.draw(pixel, Math.min(x1, x2) - 0.5f, Math.min(y1, y2) - 0.5f,
+                Math.abs(x2 - x1) + 1, Math.abs(y2 - y1) + 1);
+    }
+
+    /**
+     * Draws the outline of a rectangle with lines of one unit width.
+     */
+    public static void outline(Batch batch, TextureRegion pixel, float x, float y, float width, float height)
+    {
+        line(batch, pixel, x, y, x + width, y);
+        line(batch, pixel, x, y + height, x + width, y + height);
+        line(batch, pixel, x, y, x, y + height);
+        line(batch, pixel, x + width, y, x + width, y + height);
+    }
+
+    /**
+     * Draws a filled rectangle.
+     */
+    public static void rect(Batch batch, TextureRegion pixel, float x, float y, float width, float height)
+    {
+        batch.draw(pixel, x, y, width, height);
+    }
+}
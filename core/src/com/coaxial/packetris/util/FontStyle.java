@@ -0,0 +1,40 @@
+package com.coaxial.packetris.util;
+
+/**
+ * The fonts used by the game. All of them are rasterized from the same TrueType font, see {@link BakedFont}.
+ */
+
+public enum FontStyle
+{
+    INGAME("fonts/ingame.fnt", 66),
+    TITLE("fonts/title.fnt", 100);
+
+    public static final String SOURCE = "Whimsy.TTF"; //the TrueType font all styles are rasterized from
+    public static final String REQUIRED_CHARS = //every character the game draws, except the space
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789:,.%";
+
+    private final String fileName;
+    private final int size;
+
+    FontStyle(String fileName, int size)
+    {
+        this.fileName = fileName;
+        this.size = size;
+    }
+
+    /**
+     * @return the path of the baked .fnt file, relative to the assets
+     */
+    public String getFileName()
+    {
+        return fileName;
+    }
+
+    /**
+     * @return the size in pixels
+     */
+    public int getSize()
+    {
+        return size;
+    }
+}
@@ -0,0 +1,277 @@
+package com.coaxial.packetris.util;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.profiling.GLProfiler;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.StringBuilder;
+import com.coaxial.packetris.PacketrisGame;
+
+import java.util.Locale;
+
+/**
+ * Debug tool that measures where the time of every frame goes. The screens mark the start of each {@link Phase}
+ * of their frame; the time until the next mark is added to the phase, so a phase may be entered several times per
+ * frame. The times are CPU times of the render thread - the sprite batch submits its draw calls when it flushes,
+ * so their cost is part of the phase that caused the flush. Draw calls, texture bindings and vertices are
+ * counted by a {@link GLProfiler}.
+ * <p>
+ * All values are collected in preallocated {@link Histogram}s, so profiling does not allocate memory while a game
+ * is running. The percentiles can be shown in an overlay and written to a report. Does nothing until it is enabled.
+ */
+
+public class FrameProfiler
+{
+    private static final long HIGHEST_TIME = 1000000; //in microseconds
+    private static final float OVERLAY_INTERVAL = 0.5f; //time between updates of the overlay text, in seconds
+    private static final float OVERLAY_SCALE = 0.4f;
+
+    /**
+     * The phases of a frame.
+     */
+    public enum Phase
+    {
+        UPDATE, //loading assets and fading music, before the screen renders
+        INPUT,
+        SIMULATION, //stepping the engine, including all collision checks
+        PACKETS, //background, settled and falling packets
+        HUD, //controls, moving texts and score
+        RESULTS, //result overlay after game over
+        FLUSH //end of the batch and screen changes
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final String[] LABELS = new String[PHASES.length]; //built once, the overlay must not allocate
+
+    static
+    {
+        for (int i = 0; i < PHASES.length; ++i)
+            LABELS[i] = PHASES[i].name().toLowerCase(Locale.ROOT);
+    }
+
+    private final Histogram[] phases = new Histogram[PHASES.length];
+    private final Histogram work = new Histogram(HIGHEST_TIME); //from the start to the end of a frame
+    private final Histogram interval = new Histogram(HIGHEST_TIME); //between the starts of two frames
+    private final Histogram drawCalls = new Histogram(100000);
+    private final Histogram textureBindings = new Histogram(100000);
+    private final Histogram vertices = new Histogram(10000000);
+    private final long[] phaseTimes = new long[PHASES.length]; //of the current frame, in nanoseconds
+    private final boolean[] visited = new boolean[PHASES.length];
+    private final StringBuilder text = new StringBuilder(512);
+    private final Matrix4 projection = new Matrix4().setToOrtho2D(0, 0, PacketrisGame.GAME_WIDTH, PacketrisGame.GAME_HEIGHT);
+
+    private GLProfiler gl; //null until the first frame
+    private boolean enabled = false;
+    private boolean overlayVisible = false;
+    private Phase current; //null between frames
+    private long phaseStart;
+    private long frameStart = -1; //-1 before the first frame
+    private float overlayAge = OVERLAY_INTERVAL; //time since the text has been built
+
+    public FrameProfiler()
+    {
+        for (int i = 0; i < phases.length; ++i)
+            phases[i] = new Histogram(HIGHEST_TIME);
+    }
+
+    /**
+     * Starts or stops profiling. May be called before the game is created.
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+        if (!enabled && gl != null)
+            gl.disable();
+        frameStart = -1;
+        current = null;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void setOverlayVisible(boolean overlayVisible)
+    {
+        this.overlayVisible = overlayVisible;
+    }
+
+    public boolean isOverlayVisible()
+    {
+        return overlayVisible;
+    }
+
+    /**
+     * Starts measuring a frame; call right before rendering it.
+     */
+    public void beginFrame()
+    {
+        if (!enabled)
+            return;
+        if (gl == null)
+            gl = new GLProfiler(Gdx.graphics);
+        if (!gl.isEnabled())
+            gl.enable();
+        gl.reset();
+
+        long now = System.nanoTime();
+        if (frameStart >= 0)
+            interval.record((now - frameStart) / 1000);
+        frameStart = now;
+        for (int i = 0; i < visited.length; ++i)
+        {
+            visited[i] = false;
+            phaseTimes[i] = 0;
+        }
+        current = Phase.UPDATE;
+        phaseStart = now;
+        visited[current.ordinal()] = true;
+    }
+
+    /**
+     * Ends the current phase and starts another one.
+     *
+     * @param phase the phase starting now
+     */
+    public void phase(Phase phase)
+    {
+        if (current == null)
+            return;
+        long now = System.nanoTime();
+        phaseTimes[current.ordinal()] += now - phaseStart;
+        current = phase;
+        phaseStart = now;
+        visited[phase.ordinal()] = true;
+    }
+
+    /**
+     * Ends measuring a frame and records its values; call right after rendering it, before drawing the overlay.
+     */
+    public void endFrame()
+    {
+        if (current == null)
+            return;
+        long now = System.nanoTime();
+        phaseTimes[current.ordinal()] += now - phaseStart;
+        current = null;
+        work.record((now - frameStart) / 1000);
+        for (int i = 0; i < phases.length; ++i)
+            if (visited[i])
+                phases[i].record(phaseTimes[i] / 1000);
+        drawCalls.record(gl.getDrawCalls());
+        textureBindings.record(gl.getTextureBindings());
+        vertices.record((long) gl.getVertexCount().total);
+    }
+
+    /**
+     * Draws the median, 99th percentile and maximum of every phase and the median GL counters since the start on top
+     * of the screen, if the overlay is visible. The text is rebuilt twice per second.
+     *
+     * @param batch the batch, not drawing yet
+     * @param font  the font
+     * @param pixel a white pixel, used to darken the background of the text
+     * @param delta the time since the last frame in seconds
+     */
+    public void drawOverlay(SpriteBatch batch, BitmapFont font, TextureRegion pixel, float delta)
+    {
+        if (!enabled || !overlayVisible)
+            return;
+        overlayAge += delta;
+        if (overlayAge >= OVERLAY_INTERVAL)
+        {
+            overlayAge = 0;
+            buildOverlay();
+        }
+        batch.setProjectionMatrix(projection);
+        batch.begin();
+        batch.setColor(0, 0, 0, 0.6f);
+        batch.draw(pixel, 0, PacketrisGame.GAME_HEIGHT - 420, PacketrisGame.GAME_WIDTH, 420);
+        font.getData().setScale(OVERLAY_SCALE);
+        font.setColor(1, 1, 1, 1);
+        font.draw(batch, text, 20, PacketrisGame.GAME_HEIGHT - 20);
+        font.getData().setScale(1);
+        batch.setColor(1, 1, 1, 1);
+        batch.end();
+    }
+
+    private void buildOverlay()
+    {
+        text.setLength(0);
+        text.append("fps ").append(Gdx.graphics.getFramesPerSecond());
+        text.append("  draw calls ").append(drawCalls.getPercentile(50));
+        text.append("  bindings ").append(textureBindings.getPercentile(50));
+        text.append("  vertices ").append(vertices.getPercentile(50)).append('\n');
+        appendTimes("frame", work);
+        appendTimes("interval", interval);
+        for (int i = 0; i < PHASES.length; ++i)
+            appendTimes(LABELS[i], phases[i]);
+    }
+
+    private void appendTimes(String label, Histogram histogram)
+    {
+        text.append(label).append(" p50 ");
+        appendMillis(histogram.getPercentile(50));
+        text.append(" p99 ");
+        appendMillis(histogram.getPercentile(99));
+        text.append(" max ");
+        appendMillis(histogram.getMax());
+        text.append('\n');
+    }
+
+    private void appendMillis(long micros)
+    {
+        text.append((int) (micros / 1000)).append('.').append((int) (micros / 100 % 10)).append("ms");
+    }
+
+    /**
+     * Builds a report of all values measured since the start or the last {@link #reset()}, meant to be saved and
+     * compared across builds and devices. Allocates memory.
+     *
+     * @return the report
+     */
+    public String report()
+    {
+        java.lang.StringBuilder report = new java.lang.StringBuilder(2048);
+        report.append("# Packetris frame profile\n");
+        report.append("# platform: ").append(Gdx.app.getType()).append(' ').append(Gdx.app.getVersion()).append('\n');
+        report.append("# renderer: ").append(Gdx.gl.glGetString(GL20.GL_RENDERER)).append(", ")
+                .append(Gdx.gl.glGetString(GL20.GL_VERSION)).append('\n');
+        report.append("# screen: ").append(Gdx.graphics.getWidth()).append('x').append(Gdx.graphics.getHeight())
+                .append(", frames: ").append(work.getCount()).append('\n');
+        report.append(String.format(Locale.ROOT, "%-16s %8s %10s %8s %8s %8s %8s %8s%n",
+                "# value", "count", "mean", "p50", "p90", "p99", "p99.9", "max"));
+        appendRow(report, "frame_us", work);
+        appendRow(report, "interval_us", interval);
+        for (int i = 0; i < PHASES.length; ++i)
+            appendRow(report, LABELS[i] + "_us", phases[i]);
+        appendRow(report, "draw_calls", drawCalls);
+        appendRow(report, "texture_bindings", textureBindings);
+        appendRow(report, "vertices", vertices);
+        return report.toString();
+    }
+
+    private static void appendRow(java.lang.StringBuilder report, String label, Histogram histogram)
+    {
+        report.append(String.format(Locale.ROOT, "%-16s %8d %10.1f %8d %8d %8d %8d %8d%n", label,
+                histogram.getCount(), histogram.getMean(), histogram.getPercentile(50), histogram.getPercentile(90),
+                histogram.getPercentile(99), histogram.getPercentile(99.9), histogram.getMax()));
+    }
+
+    /**
+     * Clears all measured values.
+     */
+    public void reset()
+    {
+        for (Histogram phase : phases)
+            phase.reset();
+        work.reset();
+        interval.reset();
+        drawCalls.reset();
+        textureBindings.reset();
+        vertices.reset();
+        frameStart = -1;
+    }
+}
@@ -0,0 +1,113 @@
+package com.coaxial.packetris.util;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of non-negative values with a constant relative precision, in the style of HdrHistogram: values
+ * below 64 are counted exactly, larger ones in buckets of 32 per power of two, so every value is known within
+ * about 3%. All buckets are allocated up front, so recording a value neither allocates memory nor takes more
+ * than a few instructions, and percentiles are computed from the buckets without keeping the values.
+ */
+
+public class Histogram
+{
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final long[] counts;
+    private final long highest; //larger values are counted as this value
+    private long count;
+    private long total;
+    private long max;
+
+    /**
+     * @param highest the highest value to distinguish; larger values are counted as this one
+     */
+    public Histogram(long highest)
+    {
+        this.highest = highest;
+        counts = new long[index(highest) + 1];
+    }
+
+    public void record(long value)
+    {
+        if (value < 0)
+            value = 0;
+        counts[index(Math.min(value, highest))]++;
+        count++;
+        total += value;
+        if (value > max)
+            max = value;
+    }
+
+    public void reset()
+    {
+        Arrays.fill(counts, 0);
+        count = 0;
+        total = 0;
+        max = 0;
+    }
+
+    /**
+     * @return the amount of recorded values
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return the exact mean of the recorded values; 0 if there are none
+     */
+    public double getMean()
+    {
+        return count == 0 ? 0 : total / (double) count;
+    }
+
+    /**
+     * @return the exact largest recorded value
+     */
+    public long getMax()
+    {
+        return max;
+    }
+
+    /**
+     * Returns the value that the given share of the recorded values is lower than or equal to.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the highest value equivalent to the bucket of the percentile, but at most the largest recorded value;
+     * 0 if no values are recorded
+     */
+    public long getPercentile(double percentile)
+    {
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; ++i)
+        {
+            seen += counts[i];
+            if (seen >= rank)
+                return i == counts.length - 1 ? max : Math.min(highestEquivalent(i), max); //the last one holds larger values
+        }
+        return max;
+    }
+
+    private static int index(long value)
+    {
+        if (value < 2 * SUB_BUCKETS)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift << SUB_BITS) + (int) (value >>> shift);
+    }
+
+    private static long highestEquivalent(int index)
+    {
+        if (index < 2 * SUB_BUCKETS)
+            return index;
+        int shift = (index >>> SUB_BITS) - 1;
+        long top = SUB_BUCKETS + (index & (SUB_BUCKETS - 1));
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,143 @@
+package com.coaxial.packetris.util;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fast, seedable and splittable random generator, using the SplitMix64 algorithm of
+ * {@link java.util.SplittableRandom}.
+ * <p>
+ * Extends {@link Random} so it can be passed wherever the game expects one, but keeps its state in plain fields
+ * instead of an atomic value: an instance must only be used by one thread. Every game owns an instance, so games
+ * can be simulated concurrently without sharing state, and identical seeds yield identical rounds on every
+ * platform. {@link #split()} derives independent generators, e.g. for parallel simulations.
+ */
+
+public class SplitRandom extends Random
+{
+    private static final long serialVersionUID = 1L;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+    private static final AtomicLong SEEDER = new AtomicLong(mix64(System.currentTimeMillis()) ^ mix64(System.nanoTime()));
+
+    private long state;
+    private long gamma; //odd increment of the state
+
+    /**
+     * @param seed the seed; generators with the same seed return the same sequence
+     */
+    public SplitRandom(long seed)
+    {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    private SplitRandom(long state, long gamma)
+    {
+        super(0); //the state of Random is not used
+        this.state = state;
+        this.gamma = gamma;
+    }
+
+    /**
+     * @return a new seed, different for every call and every start of the app
+     */
+    public static long newSeed()
+    {
+        return mix64(SEEDER.getAndAdd(2 * GOLDEN_GAMMA));
+    }
+
+    /**
+     * Creates a new generator whose sequence is independent of this one. Advances this generator.
+     *
+     * @return the new generator
+     */
+    public SplitRandom split()
+    {
+        long newState = nextLong();
+        return new SplitRandom(newState, mixGamma(nextSeed()));
+    }
+
+    @Override
+    public void setSeed(long seed)
+    {
+        state = seed;
+        gamma = GOLDEN_GAMMA;
+    }
+
+    @Override
+    protected int next(int bits)
+    {
+        return (int) (mix64(nextSeed()) >>> (64 - bits));
+    }
+
+    @Override
+    public int nextInt()
+    {
+        return mix32(nextSeed());
+    }
+
+    @Override
+    public int nextInt(int bound)
+    {
+        if (bound <= 0)
+            throw new IllegalArgumentException("bound must be positive");
+        int r = mix32(nextSeed());
+        int m = bound - 1;
+        if ((bound & m) == 0) //power of two
+            return r & m;
+        for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = mix32(nextSeed()) >>> 1)
+            ; //rejects the uneven upper range
+        return r;
+    }
+
+    @Override
+    public long nextLong()
+    {
+        return mix64(nextSeed());
+    }
+
+    @Override
+    public double nextDouble()
+    {
+        return (mix64(nextSeed()) >>> 11) * DOUBLE_UNIT;
+    }
+
+    @Override
+    public float nextFloat()
+    {
+        return (mix32(nextSeed()) >>> 8) * 0x1.0p-24f;
+    }
+
+    @Override
+    public boolean nextBoolean()
+    {
+        return mix32(nextSeed()) < 0;
+    }
+
+    private long nextSeed()
+    {
+        return state += gamma;
+    }
+
+    private static long mix64(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int mix32(long z)
+    {
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+    private static long mixGamma(long z)
+    {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
@@ -0,0 +1,60 @@
+package com.coaxial.packetris.util;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.TextureData;
+import com.badlogic.gdx.graphics.glutils.ETC1;
+import com.badlogic.gdx.graphics.glutils.KTXTextureData;
+
+/**
+ * Estimates the GPU memory used by textures. OpenGL does not report this, so the size is calculated from the
+ * dimensions and the format of the texture data; drivers may add padding.
+ */
+
+public class TextureMemory
+{
+    private static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+
+    /**
+     * @param texture the texture
+     * @return the estimated size in bytes, including all mipmap levels
+     */
+    public static long estimate(Texture texture)
+    {
+        int width = texture.getWidth();
+        int height = texture.getHeight();
+        TextureData data = texture.getTextureData();
+        if (data instanceof KTXTextureData)
+        {
+            KTXTextureData ktx = (KTXTextureData) data;
+            int format = ktx.getGlInternalFormat();
+            if (format == ETC1.ETC1_RGB8_OES || format == GL_COMPRESSED_RGB8_ETC2)
+            {
+                long size = 0;
+                for (int level = 0; level < Math.max(1, ktx.getNumberOfMipMapLevels()); ++level)
+                    size += (long) ((Math.max(1, width >> level) + 3) / 4) * ((Math.max(1, height >> level) + 3) / 4) * 8;
+                return size;
+            }
+        }
+        long size = (long) width * height * bytesPerPixel(data.getFormat());
+        return data.useMipMaps() ? size * 4 / 3 : size;
+    }
+
+    private static int bytesPerPixel(Pixmap.Format format)
+    {
+        switch (format)
+        {
+            case Alpha:
+            case Intensity:
+                return 1;
+            case LuminanceAlpha:
+            case RGB565:
+            case RGBA4444:
+                return 2;
+            case RGB888:
+                return 3;
+            default:
+                return 4;
+        }
+    }
+}
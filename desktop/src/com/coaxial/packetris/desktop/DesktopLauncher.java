@@ -0,0 +1,88 @@
+package com.coaxial.packetris.desktop;
+
+import com.badlogic.gdx.backends.lwjgl3.Lwjgl3Application;
+import com.badlogic.gdx.backends.lwjgl3.Lwjgl3ApplicationConfiguration;
+import com.coaxial.packetris.AudioDirector;
+import com.coaxial.packetris.GameScreen;
+import com.coaxial.packetris.PacketrisGame;
+import com.coaxial.packetris.engine.Replay;
+import com.coaxial.packetris.headless.JvmAllocationCounter;
+import com.coaxial.packetris.headless.LaunchOptions;
+import com.coaxial.packetris.headless.ProfilingSession;
+import com.coaxial.packetris.headless.ScriptedInput;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Runs the game in a window on desktop systems, e.g. to profile it on a development machine. See
+ * {@link LaunchOptions} for the options; run with {@code gradlew :desktop:run -Pargs="..."}.
+ * Only the frames of game rounds count as warmup and measured frames.
+ */
+
+public class DesktopLauncher
+{
+    public static void main(String[] args) throws IOException
+    {
+        final LaunchOptions options;
+        try
+        {
+            options = LaunchOptions.parse(args);
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.err.println(LaunchOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+
+        final ProfilingSession session = new ProfilingSession(options);
+        PacketrisGame game = new PacketrisGame(options.isAllocations() ? new JvmAllocationCounter() : null)
+        {
+            @Override
+            public void render()
+            {
+                super.render();
+                if (getScreen() instanceof GameScreen && session.frame())
+                    getProfiler().reset(); //only the measured frames are reported
+            }
+
+            @Override
+            public void dispose()
+            {
+                session.end();
+                if (getProfiler().isEnabled())
+                    saveProfile();
+                super.dispose();
+            }
+        };
+        if (options.isSeedFixed())
+            game.setFixedSeed(options.getSeed());
+        if (options.getScript() != null)
+            game.setAutoplay(options.getType(), ScriptedInput.read(options.getScript()));
+        if (options.getReplay() != null)
+        {
+            InputStream in = new BufferedInputStream(new FileInputStream(options.getReplay()));
+            try
+            {
+                game.setStartReplay(Replay.read(in), options.getSpeed());
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        game.getProfiler().setEnabled(options.isProfile());
+        game.getProfiler().setOverlayVisible(options.isProfile());
+
+        Lwjgl3ApplicationConfiguration config = new Lwjgl3ApplicationConfiguration();
+        config.setTitle("Packetris");
+        config.setWindowedMode(options.getWidth(), options.getHeight());
+        config.useVsync(!options.isUncapped()); //without vsync, frames are not limited at all
+        config.setAudioConfig(AudioDirector.MAX_VOICES + 2, 512, 9); //two tracks play while crossfading
+        new Lwjgl3Application(game, config);
+    }
+}
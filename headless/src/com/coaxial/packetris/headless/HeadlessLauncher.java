@@ -0,0 +1,36 @@
+package com.coaxial.packetris.headless;
+
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.coaxial.packetris.engine.InputSource;
+
+import java.io.IOException;
+
+/**
+ * Plays rounds on a plain JVM without any graphics, e.g. on a build agent. See {@link LaunchOptions} for the
+ * options; run with {@code gradlew :headless:run -Pargs="..."}.
+ */
+
+public class HeadlessLauncher
+{
+    public static void main(String[] args) throws IOException
+    {
+        LaunchOptions options;
+        try
+        {
+            options = LaunchOptions.parse(args);
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.err.println(LaunchOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+        InputSource input = options.getScript() != null ? ScriptedInput.read(options.getScript()) : null;
+
+        HeadlessApplicationConfiguration config = new HeadlessApplicationConfiguration();
+        config.renderInterval = options.isUncapped() ? 0 : 1 / 60f;
+        new HeadlessApplication(new HeadlessSimulation(options, input), config);
+    }
+}
@@ -0,0 +1,123 @@
+package com.coaxial.packetris.headless;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.coaxial.packetris.Persistence;
+import com.coaxial.packetris.ReplayArchive;
+import com.coaxial.packetris.ScoreHistory;
+import com.coaxial.packetris.elements.Packet;
+import com.coaxial.packetris.engine.Action;
+import com.coaxial.packetris.engine.GameEngine;
+import com.coaxial.packetris.engine.InputSource;
+import com.coaxial.packetris.engine.Replay;
+import com.coaxial.packetris.util.AllocationMonitor;
+import com.coaxial.packetris.util.SplitRandom;
+
+/**
+ * Plays rounds without graphics: every frame steps the engine by a fixed frame time, records the replay and saves
+ * every finished round like the game screen does. Exits after the configured number of rounds or frames.
+ */
+
+public class HeadlessSimulation extends ApplicationAdapter implements GameEngine.Listener
+{
+    private static final float FRAME_TIME = 1 / 60f; //simulated time per frame, in seconds
+
+    private final LaunchOptions options;
+    private final InputSource input; //null if no actions are performed
+    private final ProfilingSession session;
+    private AllocationMonitor allocationMonitor; //null if allocations are not counted
+
+    private Persistence persistence;
+    private ScoreHistory history;
+    private ReplayArchive replays;
+    private GameEngine engine;
+    private Replay replay;
+
+    private int rounds = 0;
+    private long ticks = 0;
+    private long placedPackets = 0;
+    private long start;
+
+    /**
+     * @param options the options
+     * @param input   plays the rounds; may be null
+     */
+    public HeadlessSimulation(LaunchOptions options, InputSource input)
+    {
+        this.options = options;
+        this.input = input;
+        session = new ProfilingSession(options);
+    }
+
+    @Override
+    public void create()
+    {
+        if (options.isAllocations())
+            allocationMonitor = new AllocationMonitor(new JvmAllocationCounter());
+        persistence = new Persistence();
+        history = new ScoreHistory(persistence);
+        replays = new ReplayArchive(persistence);
+        start = System.nanoTime();
+        startRound();
+    }
+
+    @Override
+    public void render()
+    {
+        if (allocationMonitor != null)
+            allocationMonitor.beginFrame();
+        Action action = input != null && engine.getInitialWaiting() <= 0 ? input.next(engine) : Action.NONE;
+        replay.record(engine.getTicks(), action);
+        engine.step(action, FRAME_TIME);
+        if (engine.isGameOver())
+            endRound();
+        if (allocationMonitor != null)
+            allocationMonitor.endFrame();
+        session.frame();
+    }
+
+    private void startRound()
+    {
+        long seed = options.isSeedFixed() ? options.getSeed() : SplitRandom.newSeed();
+        engine = new GameEngine(options.getType(), this, seed);
+        replay = new Replay(options.getType(), seed);
+        if (input != null)
+            input.start(engine);
+    }
+
+    private void endRound()
+    {
+        replay.end(engine);
+        replays.save(replay);
+        history.add(new ScoreHistory.Round(engine.getScore(), engine.getType(), engine.getPlacedPackets(),
+                engine.getFillRatio(), engine.getTicks(), replay.getSeed()));
+        ticks += engine.getTicks();
+        rounds++;
+        if (rounds >= options.getRounds())
+            Gdx.app.exit();
+        else
+            startRound();
+    }
+
+    @Override
+    public void packetPlaced(Packet p, int points)
+    {
+        placedPackets++;
+    }
+
+    @Override
+    public void gameOver(Packet p)
+    {
+        //handled after the step, see endRound
+    }
+
+    @Override
+    public void dispose()
+    {
+        session.end();
+        persistence.dispose();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Played %d rounds with %d packets, %.0f s of game time in %.2f s%n", rounds, placedPackets,
+                ticks / (double) GameEngine.TICKS_PER_SECOND, seconds);
+    }
+}
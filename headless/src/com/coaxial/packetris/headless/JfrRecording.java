@@ -0,0 +1,67 @@
+package com.coaxial.packetris.headless;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Starts and stops a Java Flight Recording of the running JVM through its diagnostic commands, so that only the
+ * frames after a warmup are recorded. Equivalent to {@code jcmd <pid> JFR.start} and {@code JFR.stop}; needs a JVM
+ * with JFR, e.g. OpenJDK 11 or newer.
+ */
+
+public class JfrRecording
+{
+    private static final String NAME = "packetris";
+
+    private final File file;
+    private boolean running = false;
+
+    /**
+     * @param file the file the recording is written to when it is stopped
+     */
+    public JfrRecording(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Starts recording with the profile settings, which sample CPU time and allocations.
+     *
+     * @throws JMException if the JVM cannot record
+     */
+    public void start() throws JMException
+    {
+        execute("jfrStart", "name=" + NAME, "settings=profile");
+        running = true;
+    }
+
+    /**
+     * Stops recording and writes the recording to the file. Does nothing if the recording has not been started.
+     *
+     * @throws JMException if the recording cannot be written
+     */
+    public void stop() throws JMException
+    {
+        if (!running)
+            return;
+        running = false;
+        execute("jfrStop", "name=" + NAME, "filename=" + file.getAbsolutePath());
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    private static void execute(String command, String... args) throws JMException
+    {
+        ObjectName diagnostics = new ObjectName("com.sun.management:type=DiagnosticCommand");
+        Object output = ManagementFactory.getPlatformMBeanServer().invoke(diagnostics, command,
+                new Object[]{args}, new String[]{String[].class.getName()});
+        if (output != null && !output.toString().trim().isEmpty())
+            System.out.println(output.toString().trim());
+    }
+}
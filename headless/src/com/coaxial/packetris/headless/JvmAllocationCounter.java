@@ -0,0 +1,48 @@
+package com.coaxial.packetris.headless;
+
+import com.coaxial.packetris.util.AllocationCounter;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts the bytes allocated by the rendering thread using the thread statistics of HotSpot based JVMs.
+ * The JVM does not count objects. Reading the statistics allocates a few bytes on some JVMs; this is measured
+ * once and subtracted from every reading.
+ */
+
+public class JvmAllocationCounter implements AllocationCounter
+{
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private long thread;
+    private long base;
+    private long overhead; //allocated by a single reading
+    private long readings;
+
+    @Override
+    public void start()
+    {
+        threads.setThreadAllocatedMemoryEnabled(true);
+        thread = Thread.currentThread().getId();
+        for (int i = 0; i < 100; ++i) //lets the JIT settle first, the first readings may allocate more
+            threads.getThreadAllocatedBytes(thread);
+        long first = threads.getThreadAllocatedBytes(thread);
+        overhead = threads.getThreadAllocatedBytes(thread) - first;
+        base = threads.getThreadAllocatedBytes(thread);
+        readings = 0;
+    }
+
+    @Override
+    public long getAllocatedObjects()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getAllocatedBytes()
+    {
+        long bytes = threads.getThreadAllocatedBytes(thread) - base - readings * overhead;
+        readings++;
+        return bytes;
+    }
+}
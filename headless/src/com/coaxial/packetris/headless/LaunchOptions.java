@@ -0,0 +1,180 @@
+package com.coaxial.packetris.headless;
+
+import com.coaxial.packetris.GameType;
+import com.coaxial.packetris.engine.Replay;
+
+import java.io.File;
+
+/**
+ * The command line options of the desktop and headless launchers.
+ */
+
+public class LaunchOptions
+{
+    public static final String USAGE = "Options:\n"
+            + "  --uncapped           render as many frames as possible instead of waiting for vsync\n"
+            + "  --seed <seed>        use this seed for every round\n"
+            + "  --type <type>        game type of autoplayed rounds: DEFAULT or SPEED\n"
+            + "  --script <file>      play every round with the actions of a script, see ScriptedInput\n"
+            + "  --replay <file>      play a replay (desktop only)\n"
+            + "  --speed <speed>      initial speed of the replay: NORMAL, FAST or MAX\n"
+            + "  --frames <count>     exit after this many frames after the warmup, 0 for no limit\n"
+            + "  --rounds <count>     exit after this many rounds (headless only)\n"
+            + "  --warmup <frames>    frames of a round to render before measuring and recording starts\n"
+            + "  --jfr <file>         record a Java Flight Recording after the warmup, written on exit\n"
+            + "  --profile            enable the frame profiler and its overlay (desktop only)\n"
+            + "  --allocations        log every frame that allocates memory\n"
+            + "  --size <w>x<h>       window size (desktop only)";
+
+    private boolean uncapped = false;
+    private boolean seedFixed = false;
+    private long seed;
+    private GameType type = GameType.DEFAULT;
+    private File script; //null if none
+    private File replay; //null if none
+    private Replay.Speed speed = Replay.Speed.NORMAL;
+    private int frames = 0;
+    private int rounds = 100;
+    private int warmup = 300;
+    private File jfr; //null if not recording
+    private boolean profile = false;
+    private boolean allocations = false;
+    private int width = 540;
+    private int height = 900;
+
+    /**
+     * @param args the command line arguments
+     * @return the options
+     * @throws IllegalArgumentException if an argument is unknown or invalid
+     */
+    public static LaunchOptions parse(String[] args)
+    {
+        LaunchOptions options = new LaunchOptions();
+        for (int i = 0; i < args.length; ++i)
+        {
+            String arg = args[i];
+            if (arg.equals("--uncapped"))
+                options.uncapped = true;
+            else if (arg.equals("--profile"))
+                options.profile = true;
+            else if (arg.equals("--allocations"))
+                options.allocations = true;
+            else if (i + 1 >= args.length)
+                throw new IllegalArgumentException("Unknown option or missing value: " + arg);
+            else
+            {
+                String value = args[++i];
+                try
+                {
+                    if (arg.equals("--seed"))
+                    {
+                        options.seedFixed = true;
+                        options.seed = Long.parseLong(value);
+                    } else if (arg.equals("--type"))
+                        options.type = GameType.valueOf(value.toUpperCase());
+                    else if (arg.equals("--script"))
+                        options.script = new File(value);
+                    else if (arg.equals("--replay"))
+                        options.replay = new File(value);
+                    else if (arg.equals("--speed"))
+                        options.speed = Replay.Speed.valueOf(value.toUpperCase());
+                    else if (arg.equals("--frames"))
+                        options.frames = Integer.parseInt(value);
+                    else if (arg.equals("--rounds"))
+                        options.rounds = Integer.parseInt(value);
+                    else if (arg.equals("--warmup"))
+                        options.warmup = Integer.parseInt(value);
+                    else if (arg.equals("--jfr"))
+                        options.jfr = new File(value);
+                    else if (arg.equals("--size"))
+                    {
+                        String[] size = value.split("x");
+                        options.width = Integer.parseInt(size[0]);
+                        options.height = Integer.parseInt(size[1]);
+                    } else
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+                catch (NumberFormatException | ArrayIndexOutOfBoundsException e)
+                {
+                    throw new IllegalArgumentException("Invalid value of " + arg + ": " + value);
+                }
+            }
+        }
+        return options;
+    }
+
+    public boolean isUncapped()
+    {
+        return uncapped;
+    }
+
+    public boolean isSeedFixed()
+    {
+        return seedFixed;
+    }
+
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    public GameType getType()
+    {
+        return type;
+    }
+
+    public File getScript()
+    {
+        return script;
+    }
+
+    public File getReplay()
+    {
+        return replay;
+    }
+
+    public Replay.Speed getSpeed()
+    {
+        return speed;
+    }
+
+    public int getFrames()
+    {
+        return frames;
+    }
+
+    public int getRounds()
+    {
+        return rounds;
+    }
+
+    public int getWarmup()
+    {
+        return warmup;
+    }
+
+    public File getJfr()
+    {
+        return jfr;
+    }
+
+    public boolean isProfile()
+    {
+        return profile;
+    }
+
+    public boolean isAllocations()
+    {
+        return allocations;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+}
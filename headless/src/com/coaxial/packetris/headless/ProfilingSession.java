@@ -0,0 +1,83 @@
+package com.coaxial.packetris.headless;
+
+import com.badlogic.gdx.Gdx;
+
+import javax.management.JMException;
+
+/**
+ * Counts the frames of a launcher run: skips the warmup frames, then starts the flight recording and measures
+ * the frame rate until the frame limit is reached, which exits the app.
+ *
+ * @see LaunchOptions
+ */
+
+public class ProfilingSession
+{
+    private final int warmup;
+    private final int frames; //0 for no limit
+    private final JfrRecording recording; //null if not recording
+    private long frame = 0;
+    private long start; //time the measurement started, in nanoseconds
+
+    public ProfilingSession(LaunchOptions options)
+    {
+        warmup = options.getWarmup();
+        frames = options.getFrames();
+        recording = options.getJfr() != null ? new JfrRecording(options.getJfr()) : null;
+    }
+
+    /**
+     * Counts a frame; call after each measured frame.
+     *
+     * @return true if the measurement has started with this frame, so the caller can reset its own statistics
+     */
+    public boolean frame()
+    {
+        frame++;
+        if (frame == Math.max(0, warmup) + 1)
+        {
+            start = System.nanoTime();
+            if (recording != null)
+            {
+                try
+                {
+                    recording.start();
+                }
+                catch (JMException e)
+                {
+                    Gdx.app.error("Profiling", "Could not start the flight recording", e);
+                }
+            }
+            return true;
+        }
+        if (frames > 0 && frame == Math.max(0, warmup) + frames)
+            Gdx.app.exit();
+        return false;
+    }
+
+    /**
+     * Stops the flight recording and prints the measured frame rate; call when the app exits.
+     */
+    public void end()
+    {
+        long measured = frame - Math.max(0, warmup);
+        if (measured > 0)
+        {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Measured %d frames in %.2f s: %.1f frames per second%n", measured, seconds,
+                    measured / seconds);
+        }
+        if (recording != null)
+        {
+            try
+            {
+                recording.stop();
+                System.out.println("Flight recording written to " + recording.getFile().getAbsolutePath());
+            }
+            catch (JMException e)
+            {
+                Gdx.app.error("Profiling", "Could not write the flight recording", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.coaxial.packetris.headless;
+
+import com.coaxial.packetris.engine.Action;
+import com.coaxial.packetris.engine.GameEngine;
+import com.coaxial.packetris.engine.InputSource;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plays rounds with the actions of a text file. Every line holds the ticks to wait after the previous action and
+ * the action, e.g. {@code 60 ROTATE_LEFT}; empty lines and lines starting with {@code #} are ignored. The ticks of
+ * the first action count from the start of the round. The script starts over after its last action and with
+ * every round, so with a fixed seed every round is played the same way.
+ */
+
+public class ScriptedInput implements InputSource
+{
+    private final long[] delays; //in ticks
+    private final Action[] actions;
+    private int next; //index of the next action
+    private long nextTick;
+
+    /**
+     * @param delays  the ticks to wait before each action
+     * @param actions the actions
+     */
+    public ScriptedInput(long[] delays, Action[] actions)
+    {
+        if (delays.length != actions.length || actions.length == 0)
+            throw new IllegalArgumentException("A script needs at least one action and a delay for every action");
+        this.delays = delays;
+        this.actions = actions;
+    }
+
+    /**
+     * Reads a script file.
+     *
+     * @param file the file
+     * @return the script
+     * @throws IOException if the file cannot be read or contains an invalid line
+     */
+    public static ScriptedInput read(File file) throws IOException
+    {
+        List<Long> delays = new ArrayList<Long>();
+        List<Action> actions = new ArrayList<Action>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try
+        {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null)
+            {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] parts = line.split("\\s+");
+                try
+                {
+                    if (parts.length != 2)
+                        throw new IllegalArgumentException();
+                    delays.add(Long.parseLong(parts[0]));
+                    actions.add(Action.valueOf(parts[1].toUpperCase()));
+                }
+                catch (IllegalArgumentException e)
+                {
+                    throw new IOException(file + ":" + number + ": expected <ticks> <action>, found " + line);
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        long[] delayArray = new long[delays.size()];
+        for (int i = 0; i < delayArray.length; ++i)
+            delayArray[i] = delays.get(i);
+        try
+        {
+            return new ScriptedInput(delayArray, actions.toArray(new Action[0]));
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IOException(file + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void start(GameEngine engine)
+    {
+        next = 0;
+        nextTick = engine.getTicks() + delays[0];
+    }
+
+    @Override
+    public Action next(GameEngine engine)
+    {
+        if (engine.getTicks() < nextTick)
+            return Action.NONE;
+        Action action = actions[next];
+        next = (next + 1) % actions.length;
+        nextTick = engine.getTicks() + delays[next];
+        return action;
+    }
+}
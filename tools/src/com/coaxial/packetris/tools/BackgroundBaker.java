@@ -0,0 +1,142 @@
+package com.coaxial.packetris.tools;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.glutils.ETC1;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.coaxial.packetris.Assets;
+import com.coaxial.packetris.util.Backgrounds;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Build step compressing the background images into ETC1 KTX files of every height of {@link Backgrounds#HEIGHTS},
+ * including all mipmap levels. Run by the {@code bakeBackgrounds} task before the Android assets are packaged.
+ */
+
+public class BackgroundBaker
+{
+    private static final String[] IMAGES = {Assets.GAME_BACKGROUND, Assets.MENU_BACKGROUND};
+    private static final int GL_RGB = 0x1907;
+    private static final byte[] KTX_IDENTIFIER = {
+            (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'};
+
+    /**
+     * @param args the assets directory, containing the images; the variants are written to its subdirectories
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 1)
+        {
+            System.err.println("Usage: BackgroundBaker <assets directory>");
+            System.exit(1);
+        }
+        GdxNativesLoader.load();
+        File assets = new File(args[0]);
+        for (String image : IMAGES)
+        {
+            FileHandle source = new FileHandle(new File(assets, image));
+            if (!source.exists())
+            {
+                System.err.println("Warning: " + source.path() + " does not exist, the original image will be used");
+                continue;
+            }
+            Pixmap flattened = flatten(new Pixmap(source));
+            for (int height : Backgrounds.HEIGHTS)
+            {
+                int width = Math.round(flattened.getWidth() * height / (float) flattened.getHeight()) / 4 * 4;
+                FileHandle file = new FileHandle(new File(assets, Backgrounds.variant(image, height)));
+                long size = writeKtx(file, scale(flattened, width, height));
+                System.out.println("Baked " + file.path() + " (" + width + "x" + height + ", " + size / 1024
+                        + " KB instead of " + (long) width * height * 4 / 1024 + " KB as RGBA8888)");
+            }
+            flattened.dispose();
+        }
+    }
+
+    /**
+     * Draws an image onto the black clear color of the screens, removing its alpha channel.
+     */
+    private static Pixmap flatten(Pixmap image)
+    {
+        Pixmap flattened = new Pixmap(image.getWidth(), image.getHeight(), Pixmap.Format.RGB888);
+        flattened.setColor(Color.BLACK);
+        flattened.fill();
+        flattened.setBlending(Pixmap.Blending.SourceOver);
+        flattened.drawPixmap(image, 0, 0);
+        image.dispose();
+        return flattened;
+    }
+
+    private static Pixmap scale(Pixmap image, int width, int height)
+    {
+        Pixmap scaled = new Pixmap(width, height, Pixmap.Format.RGB888);
+        scaled.setBlending(Pixmap.Blending.None);
+        scaled.setFilter(Pixmap.Filter.BiLinear);
+        scaled.drawPixmap(image, 0, 0, image.getWidth(), image.getHeight(), 0, 0, width, height);
+        return scaled;
+    }
+
+    /**
+     * Encodes an image and all its mipmap levels with ETC1 and writes them to a KTX file. Disposes the image.
+     *
+     * @return the size of the compressed data in bytes
+     */
+    private static long writeKtx(FileHandle file, Pixmap image) throws IOException
+    {
+        List<ETC1.ETC1Data> levels = new ArrayList<ETC1.ETC1Data>();
+        Pixmap level = image;
+        while (true)
+        {
+            levels.add(ETC1.encodeImage(level));
+            if (level.getWidth() == 1 && level.getHeight() == 1)
+                break;
+            Pixmap next = scale(level, Math.max(1, level.getWidth() / 2), Math.max(1, level.getHeight() / 2));
+            level.dispose();
+            level = next;
+        }
+        level.dispose();
+
+        long size = 0;
+        DataOutputStream out = new DataOutputStream(file.write(false));
+        try
+        {
+            out.write(KTX_IDENTIFIER);
+            //the header is written big endian, the endianness field tells the reader to swap if necessary
+            out.writeInt(0x04030201);
+            out.writeInt(0); //glType: compressed
+            out.writeInt(1); //glTypeSize
+            out.writeInt(0); //glFormat: compressed
+            out.writeInt(ETC1.ETC1_RGB8_OES);
+            out.writeInt(GL_RGB);
+            out.writeInt(levels.get(0).width);
+            out.writeInt(levels.get(0).height);
+            out.writeInt(0); //pixelDepth
+            out.writeInt(0); //numberOfArrayElements
+            out.writeInt(1); //numberOfFaces
+            out.writeInt(levels.size());
+            out.writeInt(0); //bytesOfKeyValueData
+            for (ETC1.ETC1Data data : levels)
+            {
+                int length = data.compressedData.capacity() - data.dataOffset;
+                byte[] bytes = new byte[length];
+                data.compressedData.position(data.dataOffset);
+                data.compressedData.get(bytes);
+                out.writeInt(length); //always a multiple of 8, so no padding is needed
+                out.write(bytes);
+                size += length;
+                data.dispose();
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,43 @@
+package com.coaxial.packetris.tools;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.coaxial.packetris.util.BakedFont;
+import com.coaxial.packetris.util.FontStyle;
+
+import java.io.File;
+
+/**
+ * Build step rasterizing every {@link FontStyle} into a bitmap font, so the game does not have to run FreeType
+ * when it starts. Run by the {@code bakeFonts} task before the Android assets are packaged.
+ */
+
+public class FontBaker
+{
+    /**
+     * @param args the assets directory, containing the TrueType font; the fonts are written to its subdirectories
+     */
+    public static void main(String[] args)
+    {
+        if (args.length != 1)
+        {
+            System.err.println("Usage: FontBaker <assets directory>");
+            System.exit(1);
+        }
+        GdxNativesLoader.load();
+        File assets = new File(args[0]);
+        FreeTypeFontGenerator generator = new FreeTypeFontGenerator(new FileHandle(new File(assets, FontStyle.SOURCE)));
+        for (FontStyle style : FontStyle.values())
+        {
+            BakedFont font = BakedFont.generate(generator, style.getSize());
+            if (!font.hasGlyphs(FontStyle.REQUIRED_CHARS))
+                System.err.println("Warning: " + FontStyle.SOURCE + " lacks glyphs required by " + style);
+            FileHandle file = new FileHandle(new File(assets, style.getFileName()));
+            font.write(file);
+            font.dispose();
+            System.out.println("Baked " + file.path() + " (" + style.getSize() + " px)");
+        }
+        generator.dispose();
+    }
+}
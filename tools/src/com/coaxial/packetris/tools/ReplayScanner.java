@@ -0,0 +1,94 @@
+package com.coaxial.packetris.tools;
+
+import com.coaxial.packetris.ReplayArchive;
+import com.coaxial.packetris.engine.GameEngine;
+import com.coaxial.packetris.engine.Replay;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Plays replays as fast as possible without rendering and reports every one whose result differs from the
+ * recorded one, e.g. after changing the rules of the engine. Run with {@code gradlew :tools:scanReplays}.
+ */
+
+public class ReplayScanner
+{
+    /**
+     * @param args replay files or directories containing them
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length == 0)
+        {
+            System.err.println("Usage: ReplayScanner <replay file or directory>...");
+            System.exit(1);
+        }
+        List<File> files = new ArrayList<File>();
+        for (String arg : args)
+            collect(new File(arg), files);
+
+        int diverged = 0;
+        int failed = 0;
+        long ticks = 0;
+        long start = System.nanoTime();
+        for (File file : files)
+        {
+            Replay replay;
+            InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try
+            {
+                replay = Replay.read(in);
+            }
+            catch (IOException e)
+            {
+                System.err.println(file + ": " + e.getMessage());
+                failed++;
+                continue;
+            }
+            finally
+            {
+                in.close();
+            }
+            Replay.Playback playback = replay.play(null, Replay.Speed.MAX);
+            playback.finish();
+            GameEngine engine = playback.getEngine();
+            ticks += engine.getTicks();
+            if (playback.isDiverged())
+            {
+                System.out.println(file + ": " + replay.getType() + " seed " + Long.toHexString(replay.getSeed())
+                        + " diverged, score " + engine.getScore() + " instead of " + replay.getScore() + ", ticks "
+                        + engine.getTicks() + " instead of " + replay.getTicks() + ", actions "
+                        + playback.getPlayedActions() + " of " + replay.getActionCount());
+                diverged++;
+            }
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+        System.out.println("Played " + (files.size() - failed) + " replays (" + ticks / GameEngine.TICKS_PER_SECOND
+                + " s of game time) in " + millis + " ms: " + diverged + " diverged, " + failed + " unreadable");
+        if (diverged > 0 || failed > 0)
+            System.exit(2);
+    }
+
+    static void collect(File file, List<File> files)
+    {
+        if (!file.isDirectory())
+        {
+            files.add(file);
+            return;
+        }
+        File[] children = file.listFiles();
+        if (children == null)
+            return;
+        Arrays.sort(children);
+        for (File child : children)
+            if (child.isDirectory() || child.getName().endsWith("." + ReplayArchive.EXTENSION))
+                collect(child, files);
+    }
+}
@@ -0,0 +1,78 @@
+package com.coaxial.packetris.tools;
+
+import com.coaxial.packetris.GameType;
+import com.coaxial.packetris.engine.PackingSolver;
+import com.coaxial.packetris.engine.Replay;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Rates recorded rounds against the best score a {@link PackingSolver} finds for their packets and prints the
+ * efficiency of every round and the average per game type. Run with {@code gradlew :tools:rateRounds}.
+ */
+
+public class RoundRater
+{
+    /**
+     * @param args optionally {@code --beam <width>}, then replay files or directories containing them
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int beamWidth = PackingSolver.DEFAULT_BEAM_WIDTH;
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < args.length; ++i)
+        {
+            if (args[i].equals("--beam") && i + 1 < args.length)
+                beamWidth = Integer.parseInt(args[++i]);
+            else
+                ReplayScanner.collect(new File(args[i]), files);
+        }
+        if (files.isEmpty())
+        {
+            System.err.println("Usage: RoundRater [--beam <width>] <replay file or directory>...");
+            System.exit(1);
+        }
+
+        PackingSolver solver = new PackingSolver(beamWidth, ForkJoinPool.commonPool());
+        double[] efficiencySums = new double[GameType.values().length];
+        int[] rounds = new int[GameType.values().length];
+        long start = System.nanoTime();
+        for (File file : files)
+        {
+            Replay replay;
+            InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try
+            {
+                replay = Replay.read(in);
+            }
+            catch (IOException e)
+            {
+                System.err.println(file + ": " + e.getMessage());
+                continue;
+            }
+            finally
+            {
+                in.close();
+            }
+            PackingSolver.Result best = solver.solve(replay.getType(), replay.getSeed());
+            float efficiency = best.getEfficiency(replay.getScore());
+            System.out.printf("%s: %s seed %s, score %d of %d (%d packets): %.1f%%%n", file.getName(),
+                    replay.getType(), Long.toHexString(replay.getSeed()), replay.getScore(), best.getScore(),
+                    best.getPlacedPackets(), efficiency);
+            efficiencySums[replay.getType().ordinal()] += efficiency;
+            rounds[replay.getType().ordinal()]++;
+        }
+        for (GameType type : GameType.values())
+            if (rounds[type.ordinal()] > 0)
+                System.out.printf("%s: %d rounds, average efficiency %.1f%%%n", type, rounds[type.ordinal()],
+                        efficiencySums[type.ordinal()] / rounds[type.ordinal()]);
+        System.out.println("Rated in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+}